@@ -0,0 +1,94 @@
+package org.arper.turtle.bench;
+
+import org.arper.turtle.config.TLAnglePolicy;
+import org.arper.turtle.config.TLApplicationConfig;
+import org.arper.turtle.config.TLSimulationEngine;
+import org.arper.turtle.config.TLStateStorage;
+
+/* Application config for benchmarks: the defaults, with the few settings
+ * that benchmarks vary made mutable.
+ */
+public class TLBenchmarkConfig implements TLApplicationConfig {
+
+    public TLBenchmarkConfig() {
+        this.headless = true;
+        this.engine = DEFAULT.getSimulationEngine();
+        this.stateStorage = DEFAULT.getTurtleStateStorage();
+        this.maxBusyWaitMicros = DEFAULT.getSimulationMaxBusyWaitMicros();
+    }
+
+    private boolean headless;
+    private TLSimulationEngine engine;
+    private TLStateStorage stateStorage;
+    private long maxBusyWaitMicros;
+
+    public TLBenchmarkConfig setHeadless(boolean headless) {
+        this.headless = headless;
+        return this;
+    }
+
+    public TLBenchmarkConfig setSimulationEngine(TLSimulationEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    public TLBenchmarkConfig setTurtleStateStorage(TLStateStorage stateStorage) {
+        this.stateStorage = stateStorage;
+        return this;
+    }
+
+    public TLBenchmarkConfig setSimulationMaxBusyWaitMicros(long maxBusyWaitMicros) {
+        this.maxBusyWaitMicros = maxBusyWaitMicros;
+        return this;
+    }
+
+    @Override
+    public TLAnglePolicy getAnglePolicy() {
+        return DEFAULT.getAnglePolicy();
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    @Override
+    public int getCanvasWidth() {
+        return DEFAULT.getCanvasWidth();
+    }
+
+    @Override
+    public int getCanvasHeight() {
+        return DEFAULT.getCanvasHeight();
+    }
+
+    @Override
+    public int getSimulationCores() {
+        return DEFAULT.getSimulationCores();
+    }
+
+    @Override
+    public long getSimulationStepMicros() {
+        return DEFAULT.getSimulationStepMicros();
+    }
+
+    @Override
+    public long getSimulationMaxStutterMicros() {
+        return DEFAULT.getSimulationMaxStutterMicros();
+    }
+
+    @Override
+    public long getSimulationMaxBusyWaitMicros() {
+        return maxBusyWaitMicros;
+    }
+
+    @Override
+    public TLSimulationEngine getSimulationEngine() {
+        return engine;
+    }
+
+    @Override
+    public TLStateStorage getTurtleStateStorage() {
+        return stateStorage;
+    }
+}
@@ -0,0 +1,25 @@
+package org.arper.turtle.bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Entry point for the benchmark suite. Accepts the usual JMH command line
+ * (e.g. a benchmark regex, -f, -wi, -i, -prof gc) and always runs the forked
+ * benchmark JVMs headless, so the suite works on machines without a display.
+ */
+public class TLBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .jvmArgsAppend("-Djava.awt.headless=true")
+            .build();
+        new Runner(options).run();
+    }
+
+    private TLBenchmarks() {
+        /* do not instantiate */
+    }
+}
@@ -0,0 +1,85 @@
+package org.arper.turtle.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.arper.turtle.config.TLStateStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Cost of stepping and estimating single actions, which the simulation
+ * engines do once per running turtle per step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLActionsBenchmark {
+
+    private static final float STEP_SECONDS = 0.001f;
+
+    @Param({"Objects", "Arrays"})
+    public TLStateStorage storage;
+
+    private TLTurtleState state;
+    private TLAction forward;
+    private TLAction turn;
+    private TLAction moveTo;
+    private TLAction lookAt;
+
+    @Setup
+    public void setUp() {
+        state = storage == TLStateStorage.Arrays?
+                new TLTurtleStateStore().allocate() : new TLHeapTurtleState();
+
+        /* long enough that they never complete during a measurement */
+        forward = TLActions.forward(Float.MAX_VALUE);
+        turn = TLActions.turn(Float.MAX_VALUE);
+        moveTo = TLActions.moveTo(300, 200);
+        lookAt = TLActions.lookAt(-300, 200);
+    }
+
+    @Benchmark
+    public float forwardPerform() {
+        return forward.perform(state, STEP_SECONDS);
+    }
+
+    @Benchmark
+    public float turnPerform() {
+        return turn.perform(state, STEP_SECONDS);
+    }
+
+    @Benchmark
+    public float moveToPerform() {
+        /* alternate the turtle between the origin and the target */
+        if (moveTo.perform(state, STEP_SECONDS) > 0) {
+            state.setLocation(0, 0);
+        }
+        return state.getX();
+    }
+
+    @Benchmark
+    public float forwardCompletionTime() {
+        return forward.getCompletionTime(state);
+    }
+
+    @Benchmark
+    public float moveToCompletionTime() {
+        return moveTo.getCompletionTime(state);
+    }
+
+    @Benchmark
+    public float lookAtCompletionTime() {
+        return lookAt.getCompletionTime(state);
+    }
+}
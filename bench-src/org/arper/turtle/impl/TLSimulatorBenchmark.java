@@ -0,0 +1,111 @@
+package org.arper.turtle.impl;
+
+import java.awt.Graphics2D;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.arper.turtle.TLTurtle;
+import org.arper.turtle.bench.TLBenchmarkConfig;
+import org.arper.turtle.config.TLSimulationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Throughput of TLSimulator.invokeAndWait with one controller thread per
+ * turtle, each issuing one short move per benchmark operation. "Headless"
+ * runs on the virtual clock; the engine modes run in real time with the
+ * busy-wait shortcut disabled so that every action goes through the engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TLSimulatorBenchmark {
+
+    @Param({"Headless", "Scheduled", "FixedStep"})
+    public String mode;
+
+    @Param({"1", "16", "256"})
+    public int turtleCount;
+
+    private TLSimulator simulator;
+    private TLTurtleHandle[] handles;
+    private ExecutorService controllers;
+
+    @Setup
+    public void setUp() {
+        boolean headless = mode.equals("Headless");
+        TLBenchmarkConfig config = new TLBenchmarkConfig().setHeadless(headless);
+        if (!headless) {
+            config.setSimulationEngine(TLSimulationEngine.valueOf(mode))
+                .setSimulationMaxBusyWaitMicros(0);
+        }
+
+        /* turtles need a context to be constructed in, but are driven
+         * through a simulator of our own
+         */
+        TLContext context = new TLContext(new TLBenchmarkConfig());
+        simulator = new TLSimulator(config);
+        simulator.getSettings().unpause();
+        simulator.getSettings().setAnimationSpeed(1000);
+
+        handles = new TLTurtleHandle[turtleCount];
+        for (int i = 0; i < turtleCount; ++i) {
+            TLTurtle turtle = context.createTurtle();
+            handles[i] = new TLTurtleHandle(i, turtle, simulator.createTurtleState(), NO_OP_RENDERER, simulator);
+        }
+        controllers = Executors.newFixedThreadPool(turtleCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controllers.shutdownNow();
+        simulator.shutdown();
+    }
+
+    @Benchmark
+    public void invokeAndWait() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(handles.length);
+        for (final TLTurtleHandle handle : handles) {
+            controllers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        simulator.invokeAndWait(TLActions.forward(1), handle);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+    }
+
+    private static final TLRenderer NO_OP_RENDERER = new TLRenderer() {
+
+        @Override
+        public void preRender() {
+        }
+
+        @Override
+        public void render(Graphics2D g) {
+        }
+
+        @Override
+        public void publish(TLTurtleSnapshot snapshot) {
+        }
+    };
+}
@@ -0,0 +1,117 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.arper.turtle.impl.TLHeapTurtleState;
+import org.arper.turtle.impl.TLTurtleSnapshot;
+import org.arper.turtle.impl.TLTurtleState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* One frame of a single turtle: publish (state snapshot and dirty marking),
+ * preRender (path sampling, committing to the scene and rasterizing into the
+ * back buffer's tiles) and render
+ * (live path, status bubble and sprite), drawn offscreen while the turtle
+ * walks in a circle. Renderers must run on the AWT thread, so frames are
+ * handed over in batches to keep the hand-off out of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLJ2DTurtleRendererBenchmark {
+
+    private static final int CANVAS_SIZE = 800;
+    private static final int FRAMES = 100;
+
+    @Param({"false", "true"})
+    public boolean showStatus;
+
+    private TLTurtleState state;
+    private TLJ2DCanvas canvas;
+    private TLJ2DTurtleRenderer renderer;
+    private BufferedImage frame;
+    private Graphics2D frameGraphics;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        state = new TLHeapTurtleState();
+        state.setStatus(showStatus? "Benchmarking" : null);
+        canvas = new TLJ2DCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        renderer = new TLJ2DTurtleRenderer(canvas);
+
+        frame = new BufferedImage(CANVAS_SIZE, CANVAS_SIZE, BufferedImage.TYPE_INT_ARGB);
+        frameGraphics = createGraphics(frame);
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(CANVAS_SIZE / 2, CANVAS_SIZE / 2);
+        return g;
+    }
+
+    @TearDown
+    public void tearDown() {
+        frameGraphics.dispose();
+        canvas.shutdown();
+    }
+
+    private void advance() {
+        double angle = (tick++ % 360) * Math.PI / 180;
+        state.setLocation((float) Math.cos(angle) * 200, (float) Math.sin(angle) * 200);
+        state.setHeading((float) (angle + Math.PI / 2));
+        renderer.publish(TLTurtleSnapshot.of(state));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void preRender() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < FRAMES; ++i) {
+                    advance();
+                    renderer.preRender();
+                    canvas.rasterizeCommitted();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void preRenderAndRender() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < FRAMES; ++i) {
+                    advance();
+                    renderer.preRender();
+                    canvas.rasterizeCommitted();
+                    renderer.render(frameGraphics);
+                }
+            }
+        });
+    }
+}
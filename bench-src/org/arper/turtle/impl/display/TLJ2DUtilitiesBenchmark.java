@@ -0,0 +1,121 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.CompositeContext;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLJ2DUtilitiesBenchmark {
+
+    @State(Scope.Thread)
+    public static class SpriteState {
+
+        /* edge length of the composited sprite, and of the image being scaled */
+        @Param({"32", "128"})
+        public int size;
+
+        private BufferedImage sprite;
+        private BufferedImage destination;
+        private CompositeContext multiplyContext;
+
+        @Setup
+        public void setUp() {
+            sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = sprite.createGraphics();
+            g.setColor(new Color(40, 160, 60, 200));
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+
+            destination = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            g = destination.createGraphics();
+            g.setColor(Color.white);
+            g.fillRect(0, 0, size, size);
+            g.dispose();
+
+            multiplyContext = new TLJ2DUtilities.MultiplyColorComposite(Color.red, 0.4f)
+                .createContext(sprite.getColorModel(), destination.getColorModel(), null);
+
+            /* getScaledImage only returns images it has already scaled */
+            TLJ2DUtilities.prewarmScaledImages(Collections.singleton(sprite), size / 2).join();
+        }
+
+        @TearDown
+        public void tearDown() {
+            multiplyContext.dispose();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PathState {
+
+        @Param({"30", "1000"})
+        public int pathPoints;
+
+        private Graphics2D g;
+        private List<Point2D.Float> path;
+
+        @Setup
+        public void setUp() {
+            BufferedImage canvas = new BufferedImage(800, 800, BufferedImage.TYPE_INT_ARGB);
+            g = canvas.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setStroke(new BasicStroke(8, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.setColor(Color.black);
+            g.translate(400, 400);
+
+            path = Lists.newArrayListWithCapacity(pathPoints);
+            for (int i = 0; i < pathPoints; ++i) {
+                double angle = i * 2 * Math.PI / pathPoints;
+                float radius = 100 + (i % 7) * 20;
+                path.add(new Point2D.Float((float) Math.cos(angle) * radius, (float) Math.sin(angle) * radius));
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            g.dispose();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage multiplyCompose(SpriteState s) {
+        s.multiplyContext.compose(s.sprite.getRaster(), s.destination.getRaster(), s.destination.getRaster());
+        return s.destination;
+    }
+
+    @Benchmark
+    public BufferedImage getScaledImage(SpriteState s) {
+        return TLJ2DUtilities.getScaledImage(s.size / 2, s.sprite);
+    }
+
+    @Benchmark
+    public void drawPath(PathState s) {
+        TLJ2DUtilities.drawPath(s.g, s.path);
+    }
+}
@@ -1,13 +1,21 @@
 package org.arper.turtle;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.List;
 
 import org.arper.turtle.config.TLApplicationConfig;
 import org.arper.turtle.controller.TLController;
 import org.arper.turtle.controller.TLObjective;
 import org.arper.turtle.impl.TLContext;
+import org.arper.turtle.impl.TLJournal;
+import org.arper.turtle.impl.TLRecordedPath;
+import org.arper.turtle.impl.TLSingletonContext;
+import org.arper.turtle.impl.display.TLJ2DCanvas;
+import org.arper.turtle.impl.display.TLJ2DFrameExporter;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 
 public final class TLApplication {
@@ -28,11 +36,24 @@ public final class TLApplication {
     }
 
     public TLApplication(TLApplicationConfig config) {
+        this(config, true);
+    }
+
+    /* Only published applications are the one new turtles attach to by
+     * default; the others' turtles must be made on threads bound to their
+     * context (see TLBatchRunner).
+     */
+    TLApplication(TLApplicationConfig config, boolean published) {
         Preconditions.checkNotNull(config, "TLApplication must have non-null TLApplicationConfig.");
         this.config = config;
         this.context = new TLContext(config);
+        if (published) {
+            TLSingletonContext.set(context);
+        }
 
-        context.getWindow().setVisible(true);
+        if (!config.isHeadless()) {
+            context.getWindow().setVisible(true);
+        }
     }
 
     private final TLApplicationConfig config;
@@ -42,6 +63,60 @@ public final class TLApplication {
         return config;
     }
 
+    TLContext getContext() {
+        return context;
+    }
+
+    public List<TLTurtle> getTurtles() {
+        List<TLTurtle> turtles = context.getTurtles();
+        synchronized (turtles) {
+            return ImmutableList.copyOf(turtles);
+        }
+    }
+
+    public void removeTurtle(TLTurtle turtle) {
+        context.removeTurtle(turtle);
+    }
+
+    public void awaitCompletion() throws InterruptedException {
+        context.awaitControllers();
+    }
+
+    public List<TLRecordedPath> getRecordedPaths(TLTurtle turtle) {
+        Preconditions.checkState(config.isHeadless(),
+                "Drawn paths are only recorded by headless applications.");
+        return context.getSimulator().getPathRecorder().getPaths(turtle);
+    }
+
+    public float getSimulatedSeconds() {
+        Preconditions.checkState(config.isHeadless(),
+                "Simulated time is only recorded by headless applications.");
+        return context.getSimulator().getPathRecorder().getElapsedSeconds();
+    }
+
+    /* Starts writing what the application draws to target, a directory for
+     * PngSequence or a file for AnimatedGif, until the exporter is finished,
+     * with images scaled by scale. A windowed application's frames are taken
+     * from its canvas as it is shown. A headless application has no canvas,
+     * so its frames are drawn offscreen from its journal, in simulated time,
+     * when the exporter is finished; turtles are drawn from the export's
+     * start, so start it before they start drawing.
+     */
+    public TLJ2DFrameExporter startFrameExport(File target, TLJ2DFrameExporter.Format format,
+                                               double framesPerSecond, double scale) {
+        if (!config.isHeadless()) {
+            TLJ2DCanvas canvas = (TLJ2DCanvas) context.getWindow().getCanvas();
+            return canvas.startExport(target, format, framesPerSecond, scale);
+        }
+        TLJournal journal = context.getSimulator().requireJournal();
+        return new TLJ2DFrameExporter(journal, config, target, format, framesPerSecond, scale);
+    }
+
+    public TLJ2DFrameExporter startFrameExport(File target, TLJ2DFrameExporter.Format format,
+                                               double framesPerSecond) {
+        return startFrameExport(target, format, framesPerSecond, 1);
+    }
+
     public void startController(final TLController controller, final Object... args) {
         context.runInControllerThread(new Runnable() {
             @Override
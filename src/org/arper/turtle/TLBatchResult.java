@@ -0,0 +1,57 @@
+package org.arper.turtle;
+
+import java.util.List;
+
+import org.arper.turtle.controller.TLObjective;
+import org.arper.turtle.impl.TLRecordedPath;
+
+/* The outcome of one run of a TLBatchRunner: what each of the objective's
+ * turtles drew, the simulated time it took, and the first failure, if any.
+ */
+public final class TLBatchResult {
+
+    TLBatchResult(TLObjective objective, List<List<TLRecordedPath>> paths, float simulatedSeconds,
+                  long elapsedNanos, Throwable failure) {
+        this.objective = objective;
+        this.paths = paths;
+        this.simulatedSeconds = simulatedSeconds;
+        this.elapsedNanos = elapsedNanos;
+        this.failure = failure;
+    }
+
+    private final TLObjective objective;
+    private final List<List<TLRecordedPath>> paths;   // by turtle index
+    private final float simulatedSeconds;
+    private final long elapsedNanos;
+    private final Throwable failure;
+
+    public TLObjective getObjective() {
+        return objective;
+    }
+
+    public int getTurtleCount() {
+        return paths.size();
+    }
+
+    public List<TLRecordedPath> getRecordedPaths(int turtleIndex) {
+        return paths.get(turtleIndex);
+    }
+
+    public float getSimulatedSeconds() {
+        return simulatedSeconds;
+    }
+
+    /* wall clock time the run took */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /* null if the run completed */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
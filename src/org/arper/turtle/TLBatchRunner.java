@@ -0,0 +1,173 @@
+package org.arper.turtle;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.arper.turtle.config.TLApplicationConfig;
+import org.arper.turtle.controller.TLObjective;
+import org.arper.turtle.impl.TLPathRecorder;
+import org.arper.turtle.impl.TLRecordedPath;
+import org.arper.turtle.impl.TLSingletonContext;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/* Runs many objectives in one JVM, each in a headless application of its
+ * own, at most parallelism of them at a time:
+ *
+ *   TLBatchRunner runner = new TLBatchRunner(config);
+ *   List<TLBatchResult> results = runner.runAll(submissions);
+ *   runner.shutdown();
+ *
+ * Runs are isolated from each other: every run has its own context, which is
+ * never published as the application's, and its turtles stay attached to it
+ * whichever thread drives them. Each of an objective's turtles runs on a
+ * controller thread of its own, as with TLApplication.startObjective(), so
+ * turtles that wait for each other cannot starve the runner's threads. A run
+ * that throws is reported in its result rather than failing the batch.
+ */
+public final class TLBatchRunner {
+
+    public TLBatchRunner(TLApplicationConfig config) {
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TLBatchRunner(TLApplicationConfig config, int parallelism) {
+        Preconditions.checkNotNull(config, "TLBatchRunner must have non-null TLApplicationConfig.");
+        Preconditions.checkArgument(config.isHeadless(),
+                "Batch runs must be headless.");
+        Preconditions.checkArgument(config.getJournalFile() == null && config.getStateTraceFile() == null,
+                "Batch runs cannot share a journal or state trace file.");
+        this.config = config;
+        this.pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "TLBatchRunnerThread-" + count.getAndIncrement());
+            }
+        });
+    }
+
+    private final TLApplicationConfig config;
+    private final ExecutorService pool;
+
+    public Future<TLBatchResult> submit(TLObjective objective, Object... args) {
+        return start(objective, args);
+    }
+
+    /* runs every objective with the same arguments, returning the results
+     * in the same order
+     */
+    public List<TLBatchResult> runAll(List<? extends TLObjective> objectives, Object... args) {
+        List<Future<TLBatchResult>> runs = Lists.newArrayList();
+        for (TLObjective objective : objectives) {
+            runs.add(start(objective, args));
+        }
+
+        ImmutableList.Builder<TLBatchResult> results = ImmutableList.builder();
+        try {
+            for (Future<TLBatchResult> run : runs) {
+                results.add(run.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw Throwables.propagate(e);
+        }
+        return results.build();
+    }
+
+    private Future<TLBatchResult> start(TLObjective objective, Object[] args) {
+        Preconditions.checkArgument(objective.getObjectiveTurtleCount() > 0,
+                "Objective doesn't use any turtles! [turtleCount=%s]",
+                objective.getObjectiveTurtleCount());
+        return pool.submit(new TLBatchRun(objective, args));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private class TLBatchRun implements Callable<TLBatchResult> {
+
+        private TLBatchRun(TLObjective objective, Object[] args) {
+            this.objective = objective;
+            this.args = args;
+            this.failure = new AtomicReference<Throwable>();
+        }
+
+        private final TLObjective objective;
+        private final Object[] args;
+        private final AtomicReference<Throwable> failure;   // the first one
+
+        @Override
+        public TLBatchResult call() {
+            long startNanos = System.nanoTime();
+            int turtleCount = objective.getObjectiveTurtleCount();
+            TLApplication app = null;
+            TLTurtle[] turtles = new TLTurtle[turtleCount];
+            TLSingletonContext.enterBatchRun();
+            try {
+                app = new TLApplication(config, false);
+                for (int i = 0; i < turtleCount; ++i) {
+                    turtles[i] = app.getContext().createTurtle();
+                }
+                for (int i = 0; i < turtleCount; ++i) {
+                    app.getContext().runInControllerThread(runTurtle(app, turtles, i),
+                            "TLBatchRun-" + objective.getClass().getSimpleName() + "-Thread-" + i);
+                }
+
+                /* including anything the objective started as a controller of its own */
+                app.awaitCompletion();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                if (app != null) {
+                    app.getContext().getSimulator().shutdown();
+                }
+                TLSingletonContext.exitBatchRun();
+            }
+
+            List<List<TLRecordedPath>> paths = Lists.newArrayList();
+            float simulatedSeconds = 0;
+            if (app != null) {
+                TLPathRecorder recorder = app.getContext().getSimulator().getPathRecorder();
+                for (TLTurtle turtle : turtles) {
+                    paths.add(turtle != null? recorder.getPaths(turtle) : ImmutableList.<TLRecordedPath>of());
+                }
+                simulatedSeconds = recorder.getElapsedSeconds();
+            }
+            return new TLBatchResult(objective, paths, simulatedSeconds,
+                    System.nanoTime() - startNanos, failure.get());
+        }
+
+        /* controller threads bind the run's context, so turtles made by the
+         * objective join this run
+         */
+        private Runnable runTurtle(final TLApplication app, final TLTurtle[] turtles, final int index) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        objective.runTurtle(index, app, turtles, args);
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -3,18 +3,24 @@ package org.arper.turtle;
 import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.arper.turtle.config.TLAnglePolicy;
 import org.arper.turtle.impl.TLAction;
 import org.arper.turtle.impl.TLActions;
+import org.arper.turtle.impl.TLCommandQueue;
+import org.arper.turtle.impl.TLContext;
 import org.arper.turtle.impl.TLRenderer;
 import org.arper.turtle.impl.TLSimulator;
 import org.arper.turtle.impl.TLSingletonContext;
+import org.arper.turtle.impl.TLTurtleHandle;
 import org.arper.turtle.impl.TLTurtleState;
 import org.arper.turtle.ui.TLCanvas;
 import org.arper.turtle.ui.TLWindow;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 
 
@@ -116,6 +122,9 @@ public class TLTurtle {
 
 	private List<Point2D> fillShape;// for use to produce fillShapes
 	private List<TLListener> listeners;
+	private final TLContext context;
+	private final TLTurtleHandle handle;
+	private final TLCommandQueue commandQueue;
 
 	/*--------------------------------------------------------------*/
 	/*==============================================================*/
@@ -132,19 +141,43 @@ public class TLTurtle {
 	public TLTurtle() {
 		fillShape = Lists.newArrayList();
 		listeners = Lists.newArrayList();
+		/* bound for good, so the turtle keeps to its own context whichever
+		 * thread later drives it
+		 */
+		context = TLSingletonContext.get();
+		handle = context.attachTurtle(this);
+		commandQueue = context.getSimulator().createCommandQueue(handle);
 		reset();
 	}
 
 	protected TLTurtleState state() {
-	    return TLSingletonContext.get().getSimulator().getTurtleState(this);
+	    handle.checkAttached();
+	    return handle.getState();
 	}
 
 	protected TLRenderer renderer() {
-	    return TLSingletonContext.get().getWindow().getCanvas().getRenderer(this);
+	    return handle.getRenderer();
 	}
 
 	protected void invoke(TLAction action) {
-	    TLSingletonContext.get().getSimulator().invokeAndWait(action, this);
+	    if (commandQueue.isIdle()) {
+	        context.getSimulator().invokeAndWait(action, handle);
+	        return;
+	    }
+
+	    /* Queued asynchronous commands must finish first, so wait in line. */
+	    try {
+	        invokeLater(action).get();
+	    } catch (InterruptedException e) {
+	        throw Throwables.propagate(e);
+	    } catch (ExecutionException e) {
+	        throw Throwables.propagate(e.getCause());
+	    }
+	}
+
+	protected CompletableFuture<Void> invokeLater(TLAction action) {
+	    handle.checkAttached();
+	    return commandQueue.enqueue(action);
 	}
 
 	/*--------------------------------------------------------------*/
@@ -205,7 +238,10 @@ public class TLTurtle {
 	 * method to run your turtles.
 	 */
 	public void reset() {
-	    state().reset();
+	    synchronized (handle) {
+	        state().reset();
+	    }
+	    handle.stateChanged();
 	}
 
 	/**
@@ -220,7 +256,7 @@ public class TLTurtle {
 	 * @see #setSize(double)
 	 */
 	public double getSize() {
-		return state().thickness;
+		return state().getThickness();
 	}
 
 	/**
@@ -243,7 +279,10 @@ public class TLTurtle {
 	 * @see #getSize()
 	 */
 	public void setSize(double thickness) {
-	    state().thickness = (float) thickness;
+	    synchronized (handle) {
+	        state().setThickness((float) thickness);
+	    }
+	    handle.stateChanged();
 	}
 
 	/**
@@ -257,7 +296,7 @@ public class TLTurtle {
 	 * @see #setColor(Color)
 	 */
 	public Color getColor() {
-		return state().color;
+		return state().getColor();
 	}
 
 	/**
@@ -287,7 +326,10 @@ public class TLTurtle {
 	 */
 	public void setColor(Color c) {
 	    Preconditions.checkNotNull(c, "Turtle colors cannot be null!");
-	    state().color = c;
+	    synchronized (handle) {
+	        state().setColor(c);
+	    }
+	    handle.stateChanged();
 	}
 
 	/**
@@ -314,7 +356,10 @@ public class TLTurtle {
 	 * @see TLPathType
 	 */
 	public void setPathType(TLPathType type) {
-	    state().pathType = type;
+	    synchronized (handle) {
+	        state().setPathType(type);
+	    }
+	    handle.stateChanged();
 	}
 
 	/**
@@ -330,7 +375,7 @@ public class TLTurtle {
 	 * @see TLPathType
 	 */
 	public TLPathType getPathType() {
-		return state().pathType;
+		return state().getPathType();
 	}
 
 	/**
@@ -346,7 +391,7 @@ public class TLTurtle {
 	 * @see #penUp()
 	 */
 	public final boolean isPenDown() {
-		return state().isPenDown;
+		return state().isPenDown();
 	}
 
 	/**
@@ -373,7 +418,10 @@ public class TLTurtle {
 	 * @see #isPenDown()
 	 */
 	public void penDown() {
-	    state().isPenDown = true;
+	    synchronized (handle) {
+	        state().setPenDown(true);
+	    }
+	    handle.stateChanged();
 	}
 
 	/**
@@ -398,12 +446,15 @@ public class TLTurtle {
 	 * @see #isPenDown()
 	 */
 	public void penUp() {
-	    state().isPenDown = false;
+	    synchronized (handle) {
+	        state().setPenDown(false);
+	    }
+	    handle.stateChanged();
 	}
 
 	/* Helper method to convert 'angle' interpreted under our anglePolicy to radians. */
-	private static double clientAngleToRadians(double angle) {
-		switch (TLSingletonContext.get().getAnglePolicy()) {
+	private double clientAngleToRadians(double angle) {
+		switch (context.getAnglePolicy()) {
 		case Radians: 	return angle;
 		case Degrees: 	return angle * Math.PI / 180;
 		default: 		return 0; // unreachable
@@ -411,8 +462,8 @@ public class TLTurtle {
 	}
 
 	/* Helper method to convert 'angle' from radians to the client's anglePolicy. */
-	private static double radiansToClientAngle(double angle) {
-		switch (TLSingletonContext.get().getAnglePolicy()) {
+	private double radiansToClientAngle(double angle) {
+		switch (context.getAnglePolicy()) {
 		case Radians: 	return angle;
 		case Degrees:	return angle * 180 / Math.PI;
 		default:		return 0; // unreachable
@@ -432,7 +483,7 @@ public class TLTurtle {
 	}
 
 	public final double getHeading() {
-		return radiansToClientAngle(state().heading);
+		return radiansToClientAngle(state().getHeading());
 	}
 
 	public void turnLeft(double angle) {
@@ -457,15 +508,15 @@ public class TLTurtle {
 	}
 
 	public final Point2D getLocation() {
-	    return new Point2D.Float(state().location.x, state().location.y);
+	    return state().getLocation();
 	}
 
 	public final double getX() {
-	    return state().location.x;
+	    return state().getX();
 	}
 
 	public final double getY() {
-	    return state().location.y;
+	    return state().getY();
 	}
 
 	public void setMovementSpeed(double pixelsPerSecond) {
@@ -474,11 +525,14 @@ public class TLTurtle {
 	            TLSimulator.SIMULATION_EPSILON,
 	            pixelsPerSecond);
 
-	    state().movementSpeed = (float) pixelsPerSecond;
+	    synchronized (handle) {
+	        state().setMovementSpeed((float) pixelsPerSecond);
+	    }
+	    handle.stateChanged();
 	}
 
 	public final double getMovementSpeed() {
-		return state().movementSpeed;
+		return state().getMovementSpeed();
 	}
 
 	public void setTurningSpeed(double amountPerSecond) { // note: given in client angle units
@@ -487,30 +541,33 @@ public class TLTurtle {
                 TLSimulator.SIMULATION_EPSILON,
                 amountPerSecond);
 
-        state().turningSpeed = (float) clientAngleToRadians(amountPerSecond);
+        synchronized (handle) {
+            state().setTurningSpeed((float) clientAngleToRadians(amountPerSecond));
+        }
+        handle.stateChanged();
 	}
 
 	public final double getTurningSpeed() {
-		return radiansToClientAngle(state().turningSpeed);
+		return radiansToClientAngle(state().getTurningSpeed());
 	}
 
 	public void startFillShape() {
-	    Preconditions.checkState(!state().isFilling, "Turtle is already filling a shape!");
-	    state().isFilling = true;
-	    fillShape.add(state().location);
+	    Preconditions.checkState(!state().isFilling(), "Turtle is already filling a shape!");
+	    state().setFilling(true);
+	    fillShape.add(state().getLocation());
 	}
 
 	public void abandonFillShape() {
-	    Preconditions.checkState(state().isFilling, "Turtle is not currently filling any shapes.");
-	    state().isFilling = false;
+	    Preconditions.checkState(state().isFilling(), "Turtle is not currently filling any shapes.");
+	    state().setFilling(false);
 	    fillShape.clear();
 	}
 
 	public void endFillShape() {
-        Preconditions.checkState(state().isFilling, "Turtle is not currently filling any shapes.");
+        Preconditions.checkState(state().isFilling(), "Turtle is not currently filling any shapes.");
         /* TODO: shape filling */
 //        helperFillShape(canvas.getCanvasGraphics());
-        state().isFilling = false;
+        state().setFilling(false);
         fillShape.clear();
 	}
 
@@ -550,11 +607,108 @@ public class TLTurtle {
 	}
 
 	public void setStatus(String status) {
-	    state().status = status;
+	    synchronized (handle) {
+	        state().setStatus(status);
+	    }
+	    handle.stateChanged();
 	}
 
 	public final String getStatus() {
-	    return state().status;
+	    return state().getStatus();
+	}
+
+	/*--------------------------------------------------------------*/
+	/*==============================================================*/
+	/*=============   Asynchronous Movement Methods   ==============*/
+	/*==============================================================*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Queues a {@link #moveForward(double) moveForward} command and returns
+	 * immediately. Queued commands run one after another, in the order they
+	 * were queued, and the returned future completes once this command has
+	 * finished. This lets a single controller thread keep many turtles busy
+	 * without waiting on each command. <p>
+	 *
+	 * Blocking movement methods called while commands are queued wait for the
+	 * queue to empty first. Property setters such as {@link #setColor(Color)}
+	 * take effect immediately, so call {@link #await()} (or wait on
+	 * {@link #flush()}) before changing properties between queued moves. <p>
+	 *
+	 * Callbacks attached with non-async <tt>CompletableFuture</tt> methods
+	 * run on a simulation thread and should return quickly.
+	 *
+	 * @param amount number of pixels to move forward
+	 * @return a future that completes when the move has finished
+	 * @see #flush()
+	 */
+	public CompletableFuture<Void> moveForwardAsync(double amount) {
+	    return invokeLater(TLActions.forward((float) amount));
+	}
+
+	/**
+	 * Queues a {@link #turnLeft(double) turnLeft} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> turnLeftAsync(double angle) {
+	    return invokeLater(TLActions.turn(- (float) clientAngleToRadians(angle)));
+	}
+
+	/**
+	 * Queues a {@link #turnRight(double) turnRight} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> turnRightAsync(double angle) {
+	    return invokeLater(TLActions.turn((float) clientAngleToRadians(angle)));
+	}
+
+	/**
+	 * Queues a {@link #moveTo(double, double) moveTo} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> moveToAsync(double x, double y) {
+	    return invokeLater(TLActions.moveTo((float) x, (float) y));
+	}
+
+	/**
+	 * Queues a {@link #lookAt(double, double) lookAt} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> lookAtAsync(double x, double y) {
+	    return invokeLater(TLActions.lookAt((float) x, (float) y));
+	}
+
+	/**
+	 * Queues a {@link #setHeading(double) setHeading} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> setHeadingAsync(double heading) {
+	    return invokeLater(TLActions.head((float) heading));
+	}
+
+	/**
+	 * Queues a {@link #pause(double, boolean) pause} command and returns immediately.
+	 *
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> pauseAsync(double seconds, boolean showStatus) {
+	    return invokeLater(TLActions.pause((float) seconds, showStatus));
+	}
+
+	/**
+	 * Returns a future that completes once every command queued before this
+	 * call has finished. The blocking equivalent is {@link #await()}.
+	 *
+	 * @return a future that completes when the queue has been flushed
+	 * @see #moveForwardAsync(double)
+	 */
+	public CompletableFuture<Void> flush() {
+	    return invokeLater(TLActions.empty());
 	}
 
 	/*--------------------------------------------------------------*/
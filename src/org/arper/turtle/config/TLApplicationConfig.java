@@ -1,5 +1,7 @@
 package org.arper.turtle.config;
 
+import java.io.File;
+import java.util.concurrent.Executor;
 
 public interface TLApplicationConfig {
 
@@ -13,6 +15,56 @@ public interface TLApplicationConfig {
     long getSimulationMaxStutterMicros();
     long getSimulationMaxBusyWaitMicros();
 
+    /* The settings below have defaults, so existing configs keep working. */
+
+    default boolean isHeadless() {
+        return false;
+    }
+
+    default int getTargetFramesPerSecond() {
+        return 60;
+    }
+
+    /* Bounds the rasterized tiles of the canvas, 0 for no bound. It does not
+     * bound the drawing itself: everything committed is kept as geometry, so
+     * evicted tiles can be drawn again, until the canvas is cleared.
+     */
+    default int getCanvasMaxResidentTiles() {
+        return 0;
+    }
+
+    default TLWaitPolicy getSimulationWaitPolicy() {
+        return TLWaitPolicy.Hybrid;
+    }
+
+    default long getSimulationSpinThresholdMicros() {
+        return 10L;
+    }
+
+    default TLControllerThreading getControllerThreading() {
+        return TLControllerThreading.Platform;
+    }
+
+    default Executor getControllerExecutor() {
+        return null;
+    }
+
+    default TLSimulationEngine getSimulationEngine() {
+        return TLSimulationEngine.Scheduled;
+    }
+
+    default TLStateStorage getTurtleStateStorage() {
+        return TLStateStorage.Objects;
+    }
+
+    default File getJournalFile() {
+        return null;
+    }
+
+    default File getStateTraceFile() {
+        return null;
+    }
+
     TLApplicationConfig DEFAULT = new TLApplicationConfig() {
 
         @Override
@@ -0,0 +1,22 @@
+package org.arper.turtle.config;
+
+/**
+ * Enumeration that contains the ways controller and objective code may be
+ * run by the application.
+ *
+ * {@link #Platform} starts a dedicated operating system thread for every
+ * controller and objective turtle. {@link #Virtual} starts a virtual thread
+ * instead, which is much cheaper for large numbers of turtles; it requires a
+ * Java runtime with virtual thread support, and falls back to platform
+ * threads otherwise. {@link #Custom} submits controllers to the executor
+ * returned by {@link TLApplicationConfig#getControllerExecutor()}. <p>
+ *
+ * The default value for the application's controller threading is Platform.
+ *
+ * @see {@link TLApplicationConfig#getControllerThreading()}
+ */
+public enum TLControllerThreading {
+    Platform,
+    Virtual,
+    Custom
+}
@@ -0,0 +1,20 @@
+package org.arper.turtle.config;
+
+/**
+ * Enumeration that contains the available strategies for advancing turtle
+ * actions that take longer than a single simulation step.
+ *
+ * {@link #Scheduled} reschedules every running action individually on the
+ * simulator's thread pool once per step, where {@link #FixedStep} runs one
+ * tick thread per simulation core that advances every running action in a
+ * single pass per step. The latter is much cheaper when many turtles are
+ * moving at once. <p>
+ *
+ * The default value for the application's simulation engine is Scheduled.
+ *
+ * @see {@link TLApplicationConfig#getSimulationEngine()}
+ */
+public enum TLSimulationEngine {
+    Scheduled,
+    FixedStep
+}
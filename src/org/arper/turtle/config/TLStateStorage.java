@@ -0,0 +1,19 @@
+package org.arper.turtle.config;
+
+/**
+ * Enumeration that contains the ways the simulator may store the state of
+ * its turtles.
+ *
+ * {@link #Objects} keeps every turtle's state in its own heap object.
+ * {@link #Arrays} keeps the state of all turtles in shared primitive arrays
+ * indexed by a per-turtle slot, which uses far less memory and is faster to
+ * step through for very large numbers of turtles. <p>
+ *
+ * The default value for the application's state storage is Objects.
+ *
+ * @see {@link TLApplicationConfig#getTurtleStateStorage()}
+ */
+public enum TLStateStorage {
+    Objects,
+    Arrays
+}
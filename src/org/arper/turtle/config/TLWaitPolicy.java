@@ -0,0 +1,22 @@
+package org.arper.turtle.config;
+
+/**
+ * Enumeration that contains the strategies a controller thread may use to
+ * wait out the remainder of an action that was short enough to be completed
+ * immediately (see {@link TLApplicationConfig#getSimulationMaxBusyWaitMicros()}).
+ *
+ * {@link #Spin} busy-waits for the whole interval, which is the most precise
+ * but keeps a core busy. {@link #Park} parks the thread for the whole interval,
+ * which is cheap but subject to the operating system's timer slack.
+ * {@link #Hybrid} parks for most of the interval and only spins for the final
+ * {@link TLApplicationConfig#getSimulationSpinThresholdMicros()} microseconds. <p>
+ *
+ * The default value for the application's wait policy is Hybrid.
+ *
+ * @see {@link TLApplicationConfig#getSimulationWaitPolicy()}
+ */
+public enum TLWaitPolicy {
+    Spin,
+    Park,
+    Hybrid
+}
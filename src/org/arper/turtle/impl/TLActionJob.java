@@ -0,0 +1,46 @@
+package org.arper.turtle.impl;
+
+import java.util.concurrent.locks.LockSupport;
+
+/* A single blocking action. The submitting thread parks in await() until
+ * the engine finishes the job.
+ */
+class TLActionJob extends TLSimulationJob {
+
+    TLActionJob(TLAction action, TLTurtleHandle handle) {
+        super(handle);
+        this.action = action;
+        this.waiter = Thread.currentThread();
+    }
+
+    private final TLAction action;
+    private final Thread waiter;
+    private volatile boolean done;
+
+    @Override
+    boolean step(float seconds) {
+        /* a removed turtle's state may already be another's */
+        return handle.isRemoved() || action.perform(state, seconds) > 0;
+    }
+
+    @Override
+    float getCompletionTime() {
+        return handle.isRemoved()? 0 : action.getCompletionTime(state);
+    }
+
+    @Override
+    void finish() {
+        handle.actionFinished();
+        done = true;
+        LockSupport.unpark(waiter);
+    }
+
+    void await() throws InterruptedException {
+        while (!done) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package org.arper.turtle.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
 
 public class TLActions {
 
@@ -31,41 +37,212 @@ public class TLActions {
         return EMPTY_ACTION;
     }
 
+    public static TLAction sequence(List<TLAction> actions) {
+        List<TLAction> optimized = optimize(actions);
+        switch (optimized.size()) {
+        case 0:
+            return EMPTY_ACTION;
+        case 1:
+            return optimized.get(0);
+        default:
+            return new SequenceAction(optimized);
+        }
+    }
+
+    /* Returns the given (not yet started) actions with no-ops removed and
+     * adjacent compatible actions merged. Only merges that take exactly as
+     * long as the originals are made, so the animation is unchanged.
+     */
+    public static List<TLAction> optimize(List<TLAction> actions) {
+        List<TLAction> optimized = Lists.newArrayListWithCapacity(actions.size());
+        for (TLAction action : actions) {
+            if (isNoOp(action)) {
+                continue;
+            }
+            int last = optimized.size() - 1;
+            TLAction merged = last >= 0? coalesce(optimized.get(last), action) : null;
+            if (merged != null) {
+                optimized.set(last, merged);
+            } else {
+                optimized.add(action);
+            }
+        }
+        return optimized;
+    }
+
+    /* Returns a single action equivalent to running first and then second,
+     * or null if they cannot be merged. Neither action may have started.
+     */
+    public static TLAction coalesce(TLAction first, TLAction second) {
+        if (isNoOp(second)) {
+            return first;
+        }
+
+        if (first instanceof TurnAction && second instanceof TurnAction) {
+            float a = ((TurnAction) first).turnAmount;
+            float b = ((TurnAction) second).turnAmount;
+            if (Math.signum(a) == Math.signum(b)) {
+                return new TurnAction(a + b);
+            }
+        } else if (first instanceof ForwardAction && second instanceof ForwardAction) {
+            float a = ((ForwardAction) first).amount;
+            float b = ((ForwardAction) second).amount;
+            if (Math.signum(a) == Math.signum(b)) {
+                return new ForwardAction(a + b);
+            }
+        }
+        return null;
+    }
+
+    /* How much of an action that coalesce() can merge is still to run, as
+     * a distance or an angle, or 0 for other actions. Merged actions run
+     * through their parts in order, so this tells how far along they are.
+     */
+    static float getRemainingAmount(TLAction action) {
+        if (action instanceof TurnAction) {
+            return Math.abs(((TurnAction) action).turnAmount);
+        } else if (action instanceof ForwardAction) {
+            return Math.abs(((ForwardAction) action).amount);
+        }
+        return 0;
+    }
+
+    /* action kinds in the journal encoding */
+    private static final byte OTHER = 0, EMPTY = 1, MOVE_TO = 2, TURN = 3, LOOK_AT = 4,
+            HEADING = 5, FORWARD = 6, PAUSE = 7, SEQUENCE = 8;
+
+    /* Writes what is left of a built-in action, so that read() returns an
+     * action that behaves the same from here on. Other actions are written
+     * as OTHER and read back as an empty action; journals record where they
+     * ended up regardless.
+     */
+    static void write(TLAction action, DataOutput out) throws IOException {
+        if (action == EMPTY_ACTION) {
+            out.writeByte(EMPTY);
+        } else if (action instanceof MoveToAction) {
+            MoveToAction moveTo = (MoveToAction) action;
+            out.writeByte(MOVE_TO);
+            out.writeFloat(moveTo.x);
+            out.writeFloat(moveTo.y);
+        } else if (action instanceof TurnAction) {
+            out.writeByte(TURN);
+            out.writeFloat(((TurnAction) action).turnAmount);
+        } else if (action instanceof LookAtAction) {
+            LookAtAction lookAt = (LookAtAction) action;
+            out.writeByte(LOOK_AT);
+            out.writeFloat(lookAt.x);
+            out.writeFloat(lookAt.y);
+        } else if (action instanceof HeadingAction) {
+            out.writeByte(HEADING);
+            out.writeFloat(((HeadingAction) action).heading);
+        } else if (action instanceof ForwardAction) {
+            out.writeByte(FORWARD);
+            out.writeFloat(((ForwardAction) action).amount);
+        } else if (action instanceof PauseAction) {
+            PauseAction pause = (PauseAction) action;
+            out.writeByte(PAUSE);
+            out.writeFloat(pause.pauseAmount);
+            out.writeBoolean(pause.showStatus);
+        } else if (action instanceof SequenceAction) {
+            SequenceAction sequence = (SequenceAction) action;
+            out.writeByte(SEQUENCE);
+            TLJournal.writeVarLong(sequence.actions.length - sequence.index, out);
+            for (int i = sequence.index; i < sequence.actions.length; ++i) {
+                write(sequence.actions[i], out);
+            }
+        } else {
+            out.writeByte(OTHER);
+        }
+    }
+
+    static TLAction read(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+        case OTHER:
+        case EMPTY:
+            return EMPTY_ACTION;
+        case MOVE_TO:
+            return new MoveToAction(in.readFloat(), in.readFloat());
+        case TURN:
+            return new TurnAction(in.readFloat());
+        case LOOK_AT:
+            return new LookAtAction(in.readFloat(), in.readFloat());
+        case HEADING:
+            return new HeadingAction(in.readFloat());
+        case FORWARD:
+            return new ForwardAction(in.readFloat());
+        case PAUSE:
+            return new PauseAction(in.readFloat(), in.readBoolean());
+        case SEQUENCE:
+            long count = TLJournal.readVarLong(in);
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Sequence of " + count + " actions in journal.");
+            }
+            /* the count comes from the file, so it is not trusted as a size */
+            List<TLAction> actions = Lists.newArrayListWithCapacity((int) Math.min(count, 1024));
+            for (int i = 0; i < count; ++i) {
+                actions.add(read(in));
+            }
+            return new SequenceAction(actions);
+        default:
+            throw new IOException("Unknown action kind " + kind + " in journal.");
+        }
+    }
+
+    private static boolean isNoOp(TLAction action) {
+        if (action == EMPTY_ACTION) {
+            return true;
+        } else if (action instanceof TurnAction) {
+            return ((TurnAction) action).turnAmount == 0;
+        } else if (action instanceof ForwardAction) {
+            return ((ForwardAction) action).amount == 0;
+        } else {
+            return false;
+        }
+    }
+
     private static float doHeading(float heading, TLTurtleState t, float seconds) {
-        float diff = turnAmount(t.heading, heading);
-        if (Math.abs(diff) <= seconds * t.turningSpeed) {
-            t.heading = heading;
-            return seconds - Math.abs(diff) / t.turningSpeed;
+        float turningSpeed = t.getTurningSpeed();
+        float diff = turnAmount(t.getHeading(), heading);
+        if (Math.abs(diff) <= seconds * turningSpeed) {
+            t.setHeading(heading);
+            return seconds - Math.abs(diff) / turningSpeed;
         } else {
-            t.heading += Math.signum(diff) * t.turningSpeed * seconds;
+            t.setHeading(t.getHeading() + Math.signum(diff) * turningSpeed * seconds);
             return 0;
         }
     }
 
     private static float doLookAt(float x, float y, TLTurtleState t, float seconds) {
-        TLVector v = new TLVector(x, y).subtract(t.location);
-        float turnAmount = turnAmount(t.heading, v.angle());
-        if (Math.abs(turnAmount) <= seconds * t.turningSpeed) {
-            t.heading += turnAmount;
-            return seconds - Math.abs(turnAmount) / t.turningSpeed;
+        float turningSpeed = t.getTurningSpeed();
+        float heading = t.getHeading();
+        float turnAmount = turnAmount(heading, TLVector.angle(x - t.getX(), y - t.getY()));
+        if (Math.abs(turnAmount) <= seconds * turningSpeed) {
+            t.setHeading(heading + turnAmount);
+            return seconds - Math.abs(turnAmount) / turningSpeed;
         } else {
-            t.heading += Math.signum(turnAmount) * t.turningSpeed * seconds;
+            t.setHeading(heading + Math.signum(turnAmount) * turningSpeed * seconds);
             return 0;
         }
     }
 
     private static float doForward(float amount, TLTurtleState t, float seconds) {
-        if (amount <= t.movementSpeed * seconds) {
-            TLVector end = new TLVector(t.location).add(TLVector.unitVectorInDirection(t.heading).scale(amount));
-            t.location.setLocation(end.x, end.y);
-            return seconds - amount / t.movementSpeed;
+        float movementSpeed = t.getMovementSpeed();
+        if (amount <= movementSpeed * seconds) {
+            translate(t, amount);
+            return seconds - amount / movementSpeed;
         } else {
-            TLVector end = new TLVector(t.location).add(TLVector.unitVectorInDirection(t.heading).scale(seconds * t.movementSpeed));
-            t.location.setLocation(end.x, end.y);
+            translate(t, seconds * movementSpeed);
             return 0;
         }
     }
 
+    private static void translate(TLTurtleState t, float distance) {
+        double heading = t.getHeading();
+        t.setLocation(t.getX() + (float) Math.cos(heading) * distance,
+                t.getY() + (float) Math.sin(heading) * distance);
+    }
+
     private static float turnAmount(float heading, float target) {
         float diff = (target - heading) % (TLVector.TWO_PI_F);
         if (diff < -TLVector.PI_F) {
@@ -90,16 +267,17 @@ public class TLActions {
         public float perform(TLTurtleState t, float seconds) {
             seconds = doLookAt(x, y, t, seconds);
             if (seconds > 0) {
-                seconds = doForward(new TLVector(x, y).subtract(t.location).length(), t, seconds);
+                seconds = doForward(TLVector.length(x - t.getX(), y - t.getY()), t, seconds);
             }
             return seconds;
         }
 
         @Override
         public float getCompletionTime(TLTurtleState t) {
-            TLVector v = new TLVector(x, y).subtract(t.location);
-            return Math.abs(turnAmount(t.heading, v.angle())) / t.turningSpeed
-                    + v.length() / t.movementSpeed;
+            float dx = x - t.getX();
+            float dy = y - t.getY();
+            return Math.abs(turnAmount(t.getHeading(), TLVector.angle(dx, dy))) / t.getTurningSpeed()
+                    + TLVector.length(dx, dy) / t.getMovementSpeed();
         }
     }
 
@@ -113,22 +291,14 @@ public class TLActions {
 
         @Override
         public float perform(TLTurtleState t, float seconds) {
-            if (amount <= t.movementSpeed * seconds) {
-                TLVector end = new TLVector(t.location).add(TLVector.unitVectorInDirection(t.heading).scale(amount));
-                t.location.setLocation(end.x, end.y);
-                amount = 0;
-                return seconds - amount / t.movementSpeed;
-            } else {
-                TLVector end = new TLVector(t.location).add(TLVector.unitVectorInDirection(t.heading).scale(seconds * t.movementSpeed));
-                t.location.setLocation(end.x, end.y);
-                amount -= seconds * t.movementSpeed;
-                return 0;
-            }
+            float leftover = doForward(amount, t, seconds);
+            amount = leftover > 0? 0 : amount - seconds * t.getMovementSpeed();
+            return leftover;
         }
 
         @Override
         public float getCompletionTime(TLTurtleState t) {
-            return amount / t.movementSpeed;
+            return amount / t.getMovementSpeed();
         }
 
     }
@@ -150,8 +320,8 @@ public class TLActions {
 
         @Override
         public float getCompletionTime(TLTurtleState t) {
-            TLVector v = new TLVector(x, y).subtract(t.location);
-            return Math.abs(turnAmount(t.heading, v.angle())) / t.turningSpeed;
+            float angle = TLVector.angle(x - t.getX(), y - t.getY());
+            return Math.abs(turnAmount(t.getHeading(), angle)) / t.getTurningSpeed();
         }
     }
 
@@ -170,7 +340,7 @@ public class TLActions {
 
         @Override
         public float getCompletionTime(TLTurtleState t) {
-            return Math.abs(turnAmount(t.heading, heading)) / t.turningSpeed;
+            return Math.abs(turnAmount(t.getHeading(), heading)) / t.getTurningSpeed();
         }
 
     }
@@ -184,22 +354,23 @@ public class TLActions {
 
         @Override
         public float perform(TLTurtleState t, float seconds) {
-            if (Math.abs(turnAmount) <= seconds * t.turningSpeed) {
-                t.heading += turnAmount;
-                seconds -= Math.abs(turnAmount) / t.turningSpeed;
+            float turningSpeed = t.getTurningSpeed();
+            if (Math.abs(turnAmount) <= seconds * turningSpeed) {
+                t.setHeading(t.getHeading() + turnAmount);
+                seconds -= Math.abs(turnAmount) / turningSpeed;
                 turnAmount = 0;
                 return seconds;
             } else {
-                float turn = Math.signum(turnAmount) * seconds * t.turningSpeed;
+                float turn = Math.signum(turnAmount) * seconds * turningSpeed;
                 turnAmount -= turn;
-                t.heading += turn;
+                t.setHeading(t.getHeading() + turn);
                 return 0;
             }
         }
 
         @Override
         public float getCompletionTime(TLTurtleState t) {
-            return Math.abs(turnAmount) / t.turningSpeed;
+            return Math.abs(turnAmount) / t.getTurningSpeed();
         }
     }
 
@@ -214,25 +385,29 @@ public class TLActions {
         private float pauseAmount;
         private String initialStatus;
         private boolean firstRun = true;
+        private int shownTenths = -1;
 
         @Override
         public float perform(TLTurtleState t, float seconds) {
             if (firstRun) {
                 firstRun = false;
-                initialStatus = t.status;
+                initialStatus = t.getStatus();
             }
 
             if (pauseAmount < seconds) {
                 float retval = seconds - pauseAmount;
                 pauseAmount = 0;
                 if (showStatus) {
-                    t.status = initialStatus;
+                    t.setStatus(initialStatus);
                 }
                 return retval;
             } else {
                 pauseAmount -= seconds;
-                if (showStatus) {
-                    t.status = String.format("%.1f", pauseAmount);
+                /* only re-format the countdown when its displayed value changes */
+                int tenths = Math.round(pauseAmount * 10);
+                if (showStatus && tenths != shownTenths) {
+                    shownTenths = tenths;
+                    t.setStatus(String.format("%.1f", pauseAmount));
                 }
                 return 0;
             }
@@ -244,6 +419,40 @@ public class TLActions {
         }
     }
 
+    private static class SequenceAction implements TLAction {
+
+        public SequenceAction(List<TLAction> actions) {
+            this.actions = actions.toArray(new TLAction[actions.size()]);
+        }
+
+        private final TLAction[] actions;
+        private int index;
+
+        @Override
+        public float perform(TLTurtleState t, float seconds) {
+            while (index < actions.length) {
+                seconds = actions[index].perform(t, seconds);
+                if (seconds <= 0) {
+                    return 0;
+                }
+                ++index;
+            }
+            return seconds;
+        }
+
+        @Override
+        public float getCompletionTime(TLTurtleState t) {
+            /* Exact for relative actions; absolute ones (moveTo, lookAt, head)
+             * after the current one are estimated from the current state.
+             */
+            float time = 0;
+            for (int i = index; i < actions.length; ++i) {
+                time += actions[i].getCompletionTime(t);
+            }
+            return time;
+        }
+    }
+
     private static final TLAction EMPTY_ACTION = new TLAction() {
 
         @Override
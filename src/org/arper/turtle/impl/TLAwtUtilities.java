@@ -1,5 +1,6 @@
 package org.arper.turtle.impl;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -27,6 +28,15 @@ public class TLAwtUtilities {
         }
     }
 
+    public static void runOnAwtThreadAndWait(Runnable r)
+            throws InterruptedException, InvocationTargetException {
+        if (SwingUtilities.isEventDispatchThread()) {
+            r.run();
+        } else {
+            SwingUtilities.invokeAndWait(r);
+        }
+    }
+
     private static final Executor OFF_AWT_EXECUTOR = Executors.newCachedThreadPool();
 
     public static void runOffAwtThread(Runnable r) {
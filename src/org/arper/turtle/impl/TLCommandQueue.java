@@ -0,0 +1,199 @@
+package org.arper.turtle.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Per-turtle queue of pipelined actions. While the queue is non-empty it is
+ * submitted to the simulator as a single job, which runs the queued actions
+ * back to back (carrying leftover step time over from one action to the next)
+ * and completes each command's future as its action finishes. Commands that
+ * have not started yet are coalesced with newly queued ones where possible
+ * (see TLActions.coalesce), so long runs of small moves and turns reach the
+ * simulator as a few larger actions. The future of each merged command still
+ * completes as soon as its own part of the larger action has run.
+ */
+public class TLCommandQueue extends TLSimulationJob {
+
+    TLCommandQueue(TLSimulator simulator, TLTurtleHandle handle) {
+        super(handle);
+        this.simulator = simulator;
+        this.pending = new ArrayDeque<Command>();
+        this.draining = new AtomicBoolean();
+    }
+
+    private final TLSimulator simulator;
+    private final Deque<Command> pending;
+    private final AtomicBoolean draining;
+    private Command current;
+
+    public CompletableFuture<Void> enqueue(TLAction action) {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        synchronized (pending) {
+            Command last = pending.peekLast();
+            TLAction merged = last != null? TLActions.coalesce(last.action, action) : null;
+            if (merged != null) {
+                last.merge(merged, TLActions.getRemainingAmount(action), future);
+            } else {
+                pending.addLast(new Command(action, future));
+            }
+        }
+
+        if (draining.compareAndSet(false, true)) {
+            simulator.drain(this);
+        }
+        return future;
+    }
+
+    public boolean isIdle() {
+        return !draining.get() && isEmpty();
+    }
+
+    private boolean isEmpty() {
+        synchronized (pending) {
+            return pending.isEmpty();
+        }
+    }
+
+    private Command poll() {
+        synchronized (pending) {
+            return pending.pollFirst();
+        }
+    }
+
+    /* Claims the next command, or releases the queue if there is none. The
+     * re-check after releasing closes the race with a concurrent enqueue()
+     * that saw the queue as still draining.
+     */
+    boolean advance() {
+        while (true) {
+            current = poll();
+            if (current != null) {
+                handle.actionStarted(current.action);
+                return true;
+            }
+            draining.set(false);
+            if (isEmpty() || !draining.compareAndSet(false, true)) {
+                return false;
+            }
+        }
+    }
+
+    TLAction currentAction() {
+        return current.action;
+    }
+
+    void completeCurrent() {
+        Command finished = current;
+        current = null;
+        handle.actionFinished();
+        finished.complete(null);
+    }
+
+    void failCurrent(Throwable cause) {
+        Command failed = current;
+        current = null;
+        handle.actionFinished();
+        failed.complete(cause);
+    }
+
+    /* fails every command left, once the turtle has been removed */
+    private void cancel() {
+        Throwable cause = new IllegalStateException("The turtle has been removed from its application.");
+        if (current != null) {
+            failCurrent(cause);
+        }
+        for (Command command = poll(); command != null; command = poll()) {
+            command.complete(cause);
+        }
+        draining.set(false);
+    }
+
+    @Override
+    boolean step(float seconds) {
+        if (handle.isRemoved()) {
+            cancel();
+            return true;
+        }
+        if (current == null && !advance()) {
+            return true;
+        }
+
+        while (true) {
+            float leftover;
+            try {
+                leftover = current.action.perform(state, seconds);
+            } catch (RuntimeException e) {
+                failCurrent(e);
+                return !advance();
+            }
+
+            if (leftover <= 0) {
+                current.progress(TLActions.getRemainingAmount(current.action));
+                return false;
+            }
+            completeCurrent();
+            if (!advance()) {
+                return true;
+            }
+            seconds = leftover;
+        }
+    }
+
+    @Override
+    float getCompletionTime() {
+        Command c = current;
+        return c != null && !handle.isRemoved()? c.action.getCompletionTime(state) : 0;
+    }
+
+    private static class Command {
+
+        private Command(TLAction action, CompletableFuture<Void> future) {
+            this.action = action;
+            this.waiters = new ArrayDeque<Waiter>(1);
+            waiters.add(new Waiter(future));
+        }
+
+        private TLAction action;
+        private final Deque<Waiter> waiters;    // in the order they complete
+
+        /* every earlier part now completes with the given amount still to go */
+        private void merge(TLAction merged, float amount, CompletableFuture<Void> f) {
+            action = merged;
+            for (Waiter waiter : waiters) {
+                waiter.remainingAmount += amount;
+            }
+            waiters.addLast(new Waiter(f));
+        }
+
+        /* completes the futures of the parts that have finished running */
+        private void progress(float remainingAmount) {
+            while (waiters.size() > 1
+                    && waiters.peekFirst().remainingAmount >= remainingAmount - TLSimulator.SIMULATION_EPSILON) {
+                waiters.pollFirst().future.complete(null);
+            }
+        }
+
+        private void complete(Throwable failure) {
+            for (Waiter waiter : waiters) {
+                if (failure == null) {
+                    waiter.future.complete(null);
+                } else {
+                    waiter.future.completeExceptionally(failure);
+                }
+            }
+            waiters.clear();
+        }
+    }
+
+    private static class Waiter {
+
+        private Waiter(CompletableFuture<Void> future) {
+            this.future = future;
+        }
+
+        private final CompletableFuture<Void> future;
+        private float remainingAmount;           // of the merged action when done
+    }
+}
@@ -1,52 +1,185 @@
 package org.arper.turtle.impl;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import org.arper.turtle.TLTurtle;
 import org.arper.turtle.config.TLAnglePolicy;
 import org.arper.turtle.config.TLApplicationConfig;
+import org.arper.turtle.config.TLControllerThreading;
 import org.arper.turtle.ui.TLWindow;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 public class TLContext {
 
     public TLContext(TLApplicationConfig config) {
-        TLSingletonContext.set(this);
-
         this.anglePolicy = config.getAnglePolicy();
-        this.simulator = new TLSimulator(config.getSimulationCores(),
-                config.getSimulationStepMicros(),
-                config.getSimulationMaxStutterMicros(),
-                config.getSimulationMaxBusyWaitMicros());
+        this.simulator = new TLSimulator(config);
 
         this.turtles = Lists.newArrayList();
-        this.runningControllers = Lists.newArrayList();
-        this.window = new TLWindow(config.getCanvasWidth(), config.getCanvasHeight());
+        this.handles = Lists.newArrayList();
+        this.runningControllers = Collections.synchronizedList(Lists.<TLControllerTask>newArrayList());
+        this.controllerThreading = config.getControllerThreading();
+        this.controllerExecutor = config.getControllerExecutor();
+        Preconditions.checkArgument(controllerThreading != TLControllerThreading.Custom
+                || controllerExecutor != null,
+                "Custom controller threading requires a non-null controller executor.");
+        this.window = config.isHeadless()? null
+                : createWindow(config);
+    }
+
+    /* the window looks its context up as it is made */
+    private TLWindow createWindow(TLApplicationConfig config) {
+        TLContext previous = TLSingletonContext.bind(this);
+        try {
+            return new TLWindow(config);
+        } finally {
+            TLSingletonContext.bind(previous);
+        }
     }
 
     private final TLAnglePolicy anglePolicy;
     private final TLWindow window;
     private final TLSimulator simulator;
     private final List<TLTurtle> turtles;
-    private final List<Thread> runningControllers;
+    private final List<TLTurtleHandle> handles;
+    private final List<TLControllerTask> runningControllers;
+    private final TLControllerThreading controllerThreading;
+    private final Executor controllerExecutor;
+    private int nextTurtleId;
 
     public TLAnglePolicy getAnglePolicy() {
         return anglePolicy;
     }
 
     public void runInControllerThread(Runnable r, String threadName) {
-        TLControllerThread thread = new TLControllerThread(r, threadName);
-        runningControllers.add(thread);
-        thread.start();
+        TLControllerTask task = new TLControllerTask(r);
+        runningControllers.add(task);
+
+        switch (controllerThreading) {
+        case Custom:
+            controllerExecutor.execute(task);
+            break;
+        case Virtual:
+            newVirtualThread(task, threadName).start();
+            break;
+        case Platform:
+        default:
+            new Thread(task, threadName).start();
+            break;
+        }
+    }
+
+    public void awaitControllers() throws InterruptedException {
+        while (true) {
+            TLControllerTask controller;
+            synchronized (runningControllers) {
+                if (runningControllers.isEmpty()) {
+                    return;
+                }
+                controller = runningControllers.get(0);
+            }
+            controller.finished.await();
+        }
+    }
+
+    /* Virtual threads are looked up reflectively so that the library still
+     * runs on older Java runtimes, where we fall back to platform threads.
+     */
+    private static Method virtualThreadBuilder;
+    private static Method virtualThreadNamer;
+    private static Method virtualThreadCreator;
+    private static boolean virtualThreadsResolved;
+
+    private static synchronized Method resolveVirtualThreads() {
+        if (!virtualThreadsResolved) {
+            virtualThreadsResolved = true;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                virtualThreadBuilder = Thread.class.getMethod("ofVirtual");
+                virtualThreadNamer = builderClass.getMethod("name", String.class);
+                virtualThreadCreator = builderClass.getMethod("unstarted", Runnable.class);
+            } catch (Exception e) {
+                virtualThreadBuilder = null;
+                TLLogging.error("Virtual threads are not supported by this Java runtime;"
+                        + " falling back to platform controller threads.", e);
+            }
+        }
+        return virtualThreadBuilder;
+    }
+
+    /* Java 19 and 20 have the methods but refuse to run them without
+     * --enable-preview, so the first failure disables virtual threads for good.
+     */
+    private static synchronized void disableVirtualThreads(Exception cause) {
+        if (virtualThreadBuilder != null) {
+            virtualThreadBuilder = null;
+            TLLogging.error("Unable to create virtual controller threads;"
+                    + " falling back to platform controller threads.", cause);
+        }
+    }
+
+    private static Thread newVirtualThread(Runnable r, String name) {
+        Method ofVirtual = resolveVirtualThreads();
+        if (ofVirtual != null) {
+            try {
+                Object builder = ofVirtual.invoke(null);
+                builder = virtualThreadNamer.invoke(builder, name);
+                return (Thread) virtualThreadCreator.invoke(builder, r);
+            } catch (Exception e) {
+                disableVirtualThreads(e);
+            }
+        }
+        return new Thread(r, name);
     }
 
     public TLTurtle createTurtle() {
-        TLTurtle t = new TLTurtle();
+        TLContext previous = TLSingletonContext.bind(this);
+        try {
+            return new TLTurtle();
+        } finally {
+            TLSingletonContext.bind(previous);
+        }
+    }
+
+    /* Called once by every turtle as it is constructed. */
+    public TLTurtleHandle attachTurtle(TLTurtle t) {
+        TLTurtleState state = simulator.createTurtleState();
+        TLRenderer renderer = window != null? window.getCanvas().createRenderer(t) : null;
+        TLTurtleHandle handle;
         synchronized(turtles) {
+            handle = new TLTurtleHandle(nextTurtleId++, t, state, renderer, simulator);
             turtles.add(t);
+            handles.add(handle);
         }
-        return t;
+        return handle;
+    }
+
+    public void removeTurtle(TLTurtle t) {
+        TLTurtleHandle handle = null;
+        synchronized(turtles) {
+            int index = turtles.indexOf(t);
+            if (index < 0) {
+                return;
+            }
+            turtles.remove(index);
+            handle = handles.remove(index);
+        }
+
+        if (handle.getRenderer() != null) {
+            window.getCanvas().removeRenderer(handle.getRenderer());
+        }
+
+        /* actions in flight and queued commands stop at their next step, so
+         * the state is free to be handed to another turtle
+         */
+        handle.remove();
+        simulator.releaseTurtleState(handle.getState());
     }
 
     public TLWindow getWindow() {
@@ -61,21 +194,26 @@ public class TLContext {
         return turtles;
     }
 
-    private class TLControllerThread extends Thread {
+    private class TLControllerTask implements Runnable {
 
-        private TLControllerThread(Runnable r, String name) {
-            super(name);
+        private TLControllerTask(Runnable r) {
             this.controllerRunnable = r;
+            this.finished = new CountDownLatch(1);
         }
 
         private final Runnable controllerRunnable;
+        private final CountDownLatch finished;
 
         @Override
         public void run() {
+            /* so turtles made by the controller join this context */
+            TLContext previous = TLSingletonContext.bind(TLContext.this);
             try {
                 controllerRunnable.run();
             } finally {
+                TLSingletonContext.bind(previous);
                 runningControllers.remove(this);
+                finished.countDown();
             }
         }
     }
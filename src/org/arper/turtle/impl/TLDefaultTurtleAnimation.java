@@ -2,12 +2,13 @@ package org.arper.turtle.impl;
 
 import java.awt.image.BufferedImage;
 import java.net.URL;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 
-import org.arper.turtle.TLTurtle;
 import org.arper.turtle.impl.display.TLAnimation;
+import org.arper.turtle.impl.display.TLJ2DUtilities;
 import org.imgscalr.Scalr;
 import org.imgscalr.Scalr.Method;
 
@@ -19,6 +20,7 @@ public class TLDefaultTurtleAnimation implements TLAnimation {
 	private static final String[] DEFAULT_PIECES = {"body.png", "lflipper.png", "rflipper.png", "lfoot.png", "rfoot.png"};
 	private static final int BODY_IMAGE = 0, LFLIPPER_IMAGE = 1, RFLIPPER_IMAGE = 2, LFOOT_IMAGE = 3, RFOOT_IMAGE = 4;
 	private static int defaultImageWidth, defaultImageHeight;
+	private static final double DEFAULT_TURTLE_SIZE = 8;
 
 	static {
 		defaultImages = new BufferedImage[DEFAULT_PIECES.length];
@@ -67,13 +69,25 @@ public class TLDefaultTurtleAnimation implements TLAnimation {
 	}
 
 	@Override
-	public double getSize(TLTurtle t) {
-		return t.getSize() * 5 + 15;
+	public double getSize(double turtleSize) {
+		return getSpriteSize(turtleSize);
+	}
+
+	private static double getSpriteSize(double turtleSize) {
+		return turtleSize * 5 + 15;
+	}
+
+	/* Starts scaling the pieces for a default-sized turtle in the background,
+	 * so that they are usually ready by the first frame.
+	 */
+	public static void prewarm() {
+		TLJ2DUtilities.prewarmScaledImages(Arrays.asList(defaultImages),
+				(int) Math.ceil(getSpriteSize(DEFAULT_TURTLE_SIZE)));
 	}
 
 	@Override
-	public double getCursorSize(TLTurtle t) {
-		return t.getSize() * 1.4;
+	public double getCursorSize(double turtleSize) {
+		return turtleSize * 1.4;
 	}
 
 	private double getFootAnimationCyclePosition(double s) {
@@ -0,0 +1,154 @@
+package org.arper.turtle.impl;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.Lists;
+
+/* Advances every running action with one tick thread per shard, instead of
+ * rescheduling each action on its own. Jobs are distributed round-robin over
+ * the shards, and every shard steps all of its jobs in a single pass.
+ *
+ * Jobs of turtles kept in a TLTurtleStateStore are stepped in slot order, so
+ * a pass walks the store's arrays front to back rather than at random.
+ */
+class TLFixedStepEngine {
+
+    TLFixedStepEngine(TLSimulator simulator, int numShards,
+                      long stepMicros, long maxStutterMicros) {
+        this.simulator = simulator;
+        this.stepMicros = stepMicros;
+        this.maxStutterMicros = maxStutterMicros;
+        this.nextShard = new AtomicInteger();
+
+        shards = new Shard[Math.max(1, numShards)];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = new Shard("TLSimulatorTickThread-" + i);
+            shards[i].start();
+        }
+    }
+
+    private static final Comparator<TLSimulationJob> SLOT_ORDER = new Comparator<TLSimulationJob>() {
+        @Override
+        public int compare(TLSimulationJob a, TLSimulationJob b) {
+            return Integer.compare(TLTurtleStateStore.getSlotId(a.state),
+                    TLTurtleStateStore.getSlotId(b.state));
+        }
+    };
+
+    private final TLSimulator simulator;
+    private final long stepMicros;
+    private final long maxStutterMicros;
+    private final Shard[] shards;
+    private final AtomicInteger nextShard;
+
+    void submit(TLSimulationJob job) {
+        job.lastStepMicros = TLSimulator.currentTimeMicros();
+        int index = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+        shards[index].submit(job);
+    }
+
+    void shutdown() {
+        for (Shard shard : shards) {
+            shard.interrupt();
+        }
+    }
+
+    private class Shard extends Thread {
+
+        private Shard(String name) {
+            super(name);
+            setDaemon(true);
+            incoming = new ConcurrentLinkedQueue<TLSimulationJob>();
+            active = Lists.newArrayList();
+            completed = Lists.newArrayList();
+        }
+
+        private final Queue<TLSimulationJob> incoming;
+        private final List<TLSimulationJob> active;
+        private final List<TLSimulationJob> completed;
+
+        private void submit(TLSimulationJob job) {
+            incoming.add(job);
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                TLSimulationJob job;
+                boolean slotted = false;
+                while ((job = incoming.poll()) != null) {
+                    active.add(job);
+                    slotted |= TLTurtleStateStore.getSlotId(job.state) >= 0;
+                }
+                if (slotted) {
+                    /* mostly sorted already, which the merge sort makes cheap */
+                    Collections.sort(active, SLOT_ORDER);
+                }
+
+                if (active.isEmpty()) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                long tickStartMicros = TLSimulator.currentTimeMicros();
+                tick(tickStartMicros);
+
+                long remainingMicros = stepMicros - (TLSimulator.currentTimeMicros() - tickStartMicros);
+                if (remainingMicros > 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(remainingMicros));
+                }
+            }
+        }
+
+        private void tick(long time) {
+            /* Step every active job, compacting the finished ones away in the
+             * same pass so it stays linear and the order is kept.
+             */
+            int kept = 0;
+            for (int i = 0; i < active.size(); ++i) {
+                TLSimulationJob job = active.get(i);
+                if (step(job, time)) {
+                    completed.add(job);
+                } else {
+                    active.set(kept++, job);
+                }
+                simulator.markDirty(job.handle);
+            }
+            active.subList(kept, active.size()).clear();
+
+            for (TLSimulationJob job : completed) {
+                job.finish();
+            }
+            completed.clear();
+        }
+
+        private boolean step(TLSimulationJob job, long time) {
+            float elapsedMicros = time - job.lastStepMicros;
+            if (elapsedMicros > maxStutterMicros) {
+                elapsedMicros = maxStutterMicros;
+            }
+            job.lastStepMicros = time;
+
+            float elapsedSeconds = simulator.realToSimulationTime(elapsedMicros)
+                    / TLSimulator.MICROS_IN_SECOND;
+
+            /* under the handle's lock, so snapshots never see half a step */
+            try {
+                synchronized (job.handle) {
+                    return job.step(elapsedSeconds);
+                }
+            } catch (RuntimeException e) {
+                TLLogging.error("Turtle action failed during simulation step.", e);
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.List;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.collect.Lists;
+
+public class TLHeapTurtleState extends TLTurtleState {
+
+    public TLHeapTurtleState() {
+        fillShape = Lists.newArrayList();
+
+        reset();
+    }
+
+    private volatile float x;
+    private volatile float y;
+    private volatile float movementSpeed;
+
+    private volatile float heading;
+    private volatile float turningSpeed;
+
+    private volatile Color color;
+    private volatile TLPathType pathType;
+    private volatile float thickness;
+    private volatile boolean isPenDown;
+
+    private final List<Point2D.Float> fillShape;
+    private boolean isFilling;
+
+    private volatile String status;
+    private volatile Object data;
+
+    @Override
+    public float getX() {
+        return x;
+    }
+
+    @Override
+    public float getY() {
+        return y;
+    }
+
+    @Override
+    public void setLocation(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public float getMovementSpeed() {
+        return movementSpeed;
+    }
+
+    @Override
+    public void setMovementSpeed(float movementSpeed) {
+        this.movementSpeed = movementSpeed;
+    }
+
+    @Override
+    public float getHeading() {
+        return heading;
+    }
+
+    @Override
+    public void setHeading(float heading) {
+        this.heading = heading;
+    }
+
+    @Override
+    public float getTurningSpeed() {
+        return turningSpeed;
+    }
+
+    @Override
+    public void setTurningSpeed(float turningSpeed) {
+        this.turningSpeed = turningSpeed;
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    @Override
+    public TLPathType getPathType() {
+        return pathType;
+    }
+
+    @Override
+    public void setPathType(TLPathType pathType) {
+        this.pathType = pathType;
+    }
+
+    @Override
+    public float getThickness() {
+        return thickness;
+    }
+
+    @Override
+    public void setThickness(float thickness) {
+        this.thickness = thickness;
+    }
+
+    @Override
+    public boolean isPenDown() {
+        return isPenDown;
+    }
+
+    @Override
+    public void setPenDown(boolean isPenDown) {
+        this.isPenDown = isPenDown;
+    }
+
+    @Override
+    public List<Point2D.Float> getFillShape() {
+        return fillShape;
+    }
+
+    @Override
+    public boolean isFilling() {
+        return isFilling;
+    }
+
+    @Override
+    public void setFilling(boolean isFilling) {
+        this.isFilling = isFilling;
+    }
+
+    @Override
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @Override
+    public Object getData() {
+        return data;
+    }
+
+    @Override
+    public void setData(Object data) {
+        this.data = data;
+    }
+}
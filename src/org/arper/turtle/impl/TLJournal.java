@@ -0,0 +1,348 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/* Appends everything the turtles do to a compact binary file, so that a run
+ * can be replayed later (see TLJournalReplayer) without running the user's
+ * code again.
+ *
+ * The file is a header followed by records of a type byte, the turtle's id
+ * and the time since the previous record, both as variable length integers,
+ * then the record's payload. Changes to the state are written as a bit mask
+ * of the fields that changed since the turtle's last record followed by
+ * just those fields. Actions are written when they start, in the encoding of
+ * TLActions.write, and their end is written as the change they made, so a
+ * replay always ends up exactly where the recorded run did.
+ *
+ * Times are microseconds since the journal was opened, or the turtle's
+ * simulated time for headless simulations.
+ */
+public class TLJournal {
+
+    static final int MAGIC = 0x544c4a31;   // "TLJ1"
+    static final int VERSION = 2;
+
+    /* record types */
+    static final byte TURTLE = 0, STATE = 1, ACTION = 2, END = 3;
+
+    /* state fields */
+    static final int LOCATION = 1, HEADING = 2, MOVEMENT_SPEED = 4, TURNING_SPEED = 8,
+            COLOR = 16, PATH_TYPE = 32, THICKNESS = 64, PEN = 128, STATUS = 256;
+    static final int ALL_FIELDS = 511;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public TLJournal(File file, TLPathRecorder virtualClock) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        this.virtualClock = virtualClock;
+        this.startMicros = TLSimulator.currentTimeMicros();
+        this.journaled = Maps.newHashMap();
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        /* runs usually end with System.exit(), so make sure the tail is written */
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "TLJournalShutdownThread");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private final File file;
+    private final DataOutputStream out;
+    private final TLPathRecorder virtualClock;     // null for real time
+    private final long startMicros;
+    private final Map<Integer, TLHeapTurtleState> journaled;   // as of each turtle's last record
+    private final Thread shutdownHook;
+    private long lastMicros;
+    private boolean closed;
+
+    public File getFile() {
+        return file;
+    }
+
+    /* records any changes made to the turtle's state outside of actions */
+    synchronized void recordState(TLTurtleHandle handle) {
+        TLHeapTurtleState last = journaled.get(handle.getId());
+        if (last == null) {
+            last = new TLHeapTurtleState();
+            journaled.put(handle.getId(), last);
+            writeChanges(TURTLE, handle, last, ALL_FIELDS);
+            return;
+        }
+
+        int changed = getChangedFields(last, handle.getState());
+        if (changed != 0) {
+            writeChanges(STATE, handle, last, changed);
+        }
+    }
+
+    synchronized void recordActionStarted(TLTurtleHandle handle, TLAction action) {
+        if (closed) {
+            return;
+        }
+        if (!journaled.containsKey(handle.getId())) {
+            /* the journal was opened after the turtle was created */
+            recordState(handle);
+        }
+        try {
+            writeHeader(ACTION, handle);
+            TLActions.write(action, out);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void recordActionFinished(TLTurtleHandle handle) {
+        TLHeapTurtleState last = journaled.get(handle.getId());
+        if (last != null) {
+            writeChanges(END, handle, last, getChangedFields(last, handle.getState()));
+        }
+    }
+
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            TLLogging.error("Unable to close the simulation journal.", e);
+        }
+
+        /* so closed journals are not kept alive until exit */
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            /* closed by the hook itself, as the JVM shuts down */
+        }
+    }
+
+    private void writeChanges(byte type, TLTurtleHandle handle, TLHeapTurtleState last, int fields) {
+        if (closed) {
+            return;
+        }
+        try {
+            writeHeader(type, handle);
+            writeFields(handle.getState(), fields, out);
+            applyFields(handle.getState(), fields, last);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeHeader(byte type, TLTurtleHandle handle) throws IOException {
+        long micros = virtualClock != null
+                ? (long) (virtualClock.getElapsedSeconds(handle) * TLSimulator.MICROS_IN_SECOND)
+                : TLSimulator.currentTimeMicros() - startMicros;
+        out.writeByte(type);
+        writeVarLong(handle.getId(), out);
+        /* zigzag, as turtles on virtual clocks are not in step */
+        long delta = micros - lastMicros;
+        writeVarLong((delta << 1) ^ (delta >> 63), out);
+        lastMicros = micros;
+    }
+
+    /* the journal is never worth failing the run over */
+    private void fail(IOException e) {
+        TLLogging.error("Unable to write the simulation journal; no more will be recorded.", e);
+        closed = true;
+    }
+
+    static int getChangedFields(TLTurtleState last, TLTurtleState state) {
+        int changed = 0;
+        if (last.getX() != state.getX() || last.getY() != state.getY()) {
+            changed |= LOCATION;
+        }
+        if (last.getHeading() != state.getHeading()) {
+            changed |= HEADING;
+        }
+        if (last.getMovementSpeed() != state.getMovementSpeed()) {
+            changed |= MOVEMENT_SPEED;
+        }
+        if (last.getTurningSpeed() != state.getTurningSpeed()) {
+            changed |= TURNING_SPEED;
+        }
+        if (!last.getColor().equals(state.getColor())) {
+            changed |= COLOR;
+        }
+        if (last.getPathType() != state.getPathType()) {
+            changed |= PATH_TYPE;
+        }
+        if (last.getThickness() != state.getThickness()) {
+            changed |= THICKNESS;
+        }
+        if (last.isPenDown() != state.isPenDown()) {
+            changed |= PEN;
+        }
+        if (!Objects.equal(last.getStatus(), state.getStatus())) {
+            changed |= STATUS;
+        }
+        return changed;
+    }
+
+    static void applyFields(TLTurtleState source, int fields, TLTurtleState target) {
+        if ((fields & LOCATION) != 0) {
+            target.setLocation(source.getX(), source.getY());
+        }
+        if ((fields & HEADING) != 0) {
+            target.setHeading(source.getHeading());
+        }
+        if ((fields & MOVEMENT_SPEED) != 0) {
+            target.setMovementSpeed(source.getMovementSpeed());
+        }
+        if ((fields & TURNING_SPEED) != 0) {
+            target.setTurningSpeed(source.getTurningSpeed());
+        }
+        if ((fields & COLOR) != 0) {
+            target.setColor(source.getColor());
+        }
+        if ((fields & PATH_TYPE) != 0) {
+            target.setPathType(source.getPathType());
+        }
+        if ((fields & THICKNESS) != 0) {
+            target.setThickness(source.getThickness());
+        }
+        if ((fields & PEN) != 0) {
+            target.setPenDown(source.isPenDown());
+        }
+        if ((fields & STATUS) != 0) {
+            target.setStatus(source.getStatus());
+        }
+    }
+
+    private static void writeFields(TLTurtleState state, int fields, DataOutput out) throws IOException {
+        writeVarLong(fields, out);
+        if ((fields & LOCATION) != 0) {
+            out.writeFloat(state.getX());
+            out.writeFloat(state.getY());
+        }
+        if ((fields & HEADING) != 0) {
+            out.writeFloat(state.getHeading());
+        }
+        if ((fields & MOVEMENT_SPEED) != 0) {
+            out.writeFloat(state.getMovementSpeed());
+        }
+        if ((fields & TURNING_SPEED) != 0) {
+            out.writeFloat(state.getTurningSpeed());
+        }
+        if ((fields & COLOR) != 0) {
+            out.writeInt(state.getColor().getRGB());
+        }
+        if ((fields & PATH_TYPE) != 0) {
+            out.writeByte(state.getPathType().ordinal());
+        }
+        if ((fields & THICKNESS) != 0) {
+            out.writeFloat(state.getThickness());
+        }
+        if ((fields & PEN) != 0) {
+            out.writeBoolean(state.isPenDown());
+        }
+        if ((fields & STATUS) != 0) {
+            String status = state.getStatus();
+            out.writeBoolean(status != null);
+            if (status != null) {
+                out.writeUTF(status);
+            }
+        }
+    }
+
+    /* reads the fields written by writeFields() into target */
+    static void readFields(DataInput in, TLTurtleState target) throws IOException {
+        int fields = (int) readVarLong(in);
+        if ((fields & LOCATION) != 0) {
+            float x = in.readFloat();
+            target.setLocation(x, in.readFloat());
+        }
+        if ((fields & HEADING) != 0) {
+            target.setHeading(in.readFloat());
+        }
+        if ((fields & MOVEMENT_SPEED) != 0) {
+            target.setMovementSpeed(in.readFloat());
+        }
+        if ((fields & TURNING_SPEED) != 0) {
+            target.setTurningSpeed(in.readFloat());
+        }
+        if ((fields & COLOR) != 0) {
+            target.setColor(new Color(in.readInt(), true));
+        }
+        if ((fields & PATH_TYPE) != 0) {
+            target.setPathType(TLPathType.values()[in.readByte()]);
+        }
+        if ((fields & THICKNESS) != 0) {
+            target.setThickness(in.readFloat());
+        }
+        if ((fields & PEN) != 0) {
+            target.setPenDown(in.readBoolean());
+        }
+        if ((fields & STATUS) != 0) {
+            target.setStatus(in.readBoolean()? in.readUTF() : null);
+        }
+    }
+
+    static void writeVarLong(long value, DataOutput out) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            if (shift > 56) {
+                throw new IOException("Malformed variable length integer in journal.");
+            }
+        }
+    }
+
+    static long readZigZag(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void checkHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a simulation journal.");
+        }
+        int version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported simulation journal version " + version + ".");
+        }
+    }
+}
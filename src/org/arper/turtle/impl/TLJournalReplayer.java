@@ -0,0 +1,619 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/* Plays back a journal written by TLJournal: the state of every turtle, and
+ * everything drawn, at any time of the recorded run. Nothing is simulated
+ * in real time, so a run can be played at any speed by seeking forward by
+ * the scaled elapsed time every frame, or jumped around in freely.
+ *
+ * The journal is mapped rather than read into memory, indexed up front and
+ * replayed once to find the drawn paths and to keep a checkpoint every
+ * CHECKPOINT_INTERVAL records. A checkpoint only copies the turtles that
+ * changed since the one before it; every KEYFRAME_INTERVAL checkpoints, it
+ * also refers to the latest copy of every other turtle, so restoring one
+ * never looks further back than that. Seeking forward applies records from
+ * the current position; seeking backward starts over from the last
+ * checkpoint before the target. A turtle that is in the middle of an
+ * action is shown by running the recorded action for the matching fraction
+ * of its duration.
+ *
+ * A journal that was cut short, e.g. by a crash, is replayed up to its last
+ * complete record.
+ */
+public class TLJournalReplayer {
+
+    private static final int CHECKPOINT_INTERVAL = 1024;
+    private static final int KEYFRAME_INTERVAL = 16;      // in checkpoints
+    private static final int SEGMENT_SHIFT = 30;          // files are mapped 1GB at a time
+
+    public TLJournalReplayer(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.size = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((size + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; ++i) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(1L << SEGMENT_SHIFT, size - start));
+            }
+        }
+        this.checkpoints = Lists.newArrayList();
+        this.paths = Lists.newArrayList();
+        this.current = new Cursor();
+
+        readRecords();
+        build();
+        seek(getStartMicros());
+    }
+
+    private final long size;
+    private final MappedByteBuffer[] segments;
+
+    /* records, in order of time */
+    private int recordCount;
+    private byte[] types = new byte[256];
+    private int[] turtles = new int[256];
+    private long[] times = new long[256];
+    private long[] offsets = new long[256];      // of the payload in the file
+    private int[] actionEnds;                    // record ending each action, or -1
+
+    private final List<Checkpoint> checkpoints;
+    private final List<List<Stroke>> paths;      // per turtle
+    private final Cursor current;
+    private long timeMicros;
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getStartMicros() {
+        return recordCount > 0? times[0] : 0;
+    }
+
+    public long getEndMicros() {
+        return recordCount > 0? times[recordCount - 1] : 0;
+    }
+
+    public long getTimeMicros() {
+        return timeMicros;
+    }
+
+    /* turtle ids run from 0 to getTurtleCount() - 1 */
+    public int getTurtleCount() {
+        return paths.size();
+    }
+
+    /* moves the replay to the given time, forward or backward */
+    public void seek(long micros) {
+        int target = upperBound(micros);
+        if (target < current.position) {
+            restore(target / CHECKPOINT_INTERVAL);
+        }
+        while (current.position < target) {
+            apply(current, current.position);
+        }
+        timeMicros = micros;
+    }
+
+    public void advance(long micros) {
+        seek(timeMicros + micros);
+    }
+
+    /* the time of the next record, or Long.MAX_VALUE at the end */
+    public long getNextRecordMicros() {
+        return current.position < recordCount? times[current.position] : Long.MAX_VALUE;
+    }
+
+    /* Moves the replay to the next record, returning the turtle it changed.
+     * Stepping through records one at a time sees every state a turtle was
+     * in, e.g. the corners of a path that seek() would step over.
+     */
+    public int step() {
+        Preconditions.checkState(current.position < recordCount, "Already at the end of the journal.");
+        int record = current.position;
+        apply(current, record);
+        timeMicros = times[record];
+        return turtles[record];
+    }
+
+    public boolean isFinished() {
+        return timeMicros >= getEndMicros();
+    }
+
+    /* the turtle's state at the current time, or null if it does not exist yet */
+    public TLTurtleSnapshot getSnapshot(int turtle) {
+        TLTurtleState state = getState(turtle);
+        return state != null? TLTurtleSnapshot.of(state) : null;
+    }
+
+    /* everything the turtle has drawn up to the current time, including the
+     * part of its current move done so far
+     */
+    public List<TLRecordedPath> getPaths(int turtle) {
+        TLTurtleState state = getState(turtle);
+        if (state == null) {
+            return ImmutableList.of();
+        }
+
+        ImmutableList.Builder<TLRecordedPath> drawn = ImmutableList.builder();
+        List<Stroke> strokes = paths.get(turtle);
+        for (int i = 0; i < strokes.size(); ++i) {
+            Stroke stroke = strokes.get(i);
+            if (stroke.positions[0] >= current.position) {
+                break;
+            }
+
+            TLRecordedPath path = new TLRecordedPath(stroke.color, stroke.thickness, stroke.pathType);
+            for (int j = 0; j < stroke.count && stroke.positions[j] < current.position; ++j) {
+                path.addPoint(stroke.xs[j], stroke.ys[j]);
+            }
+            boolean last = i == strokes.size() - 1 || strokes.get(i + 1).positions[0] >= current.position;
+            if (last && state.isPenDown() && path.hasStyleOf(state)) {
+                path.addPoint(state.getX(), state.getY());
+            }
+            if (path.getPoints().size() > 1) {
+                drawn.add(path);
+            }
+        }
+        return drawn.build();
+    }
+
+    private TLTurtleState getState(int turtle) {
+        TLTurtleState committed = current.getState(turtle);
+        int action = current.getAction(turtle);
+        if (committed == null || action < 0) {
+            return committed;
+        }
+
+        long start = times[action];
+        long end = actionEnds[action] >= 0? times[actionEnds[action]] : getEndMicros();
+        float fraction = end > start? Math.min(1, (float) (timeMicros - start) / (end - start)) : 1;
+
+        TLHeapTurtleState state = new TLHeapTurtleState();
+        state.set(committed);
+        TLAction replayed = readAction(action);
+        replayed.perform(state, fraction * replayed.getCompletionTime(state));
+        return state;
+    }
+
+    /* the first record after the given time */
+    private int upperBound(long micros) {
+        int low = 0, high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] <= micros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void readRecords() throws IOException {
+        MappedInput input = new MappedInput(segments, size, 0);
+        DataInputStream in = new DataInputStream(input);
+        TLJournal.checkHeader(in);
+
+        TLHeapTurtleState scratch = new TLHeapTurtleState();
+        long time = 0;
+        try {
+            while (input.position < size) {
+                byte type = in.readByte();
+                int turtle = (int) TLJournal.readVarLong(in);
+                time += TLJournal.readZigZag(in);
+                long offset = input.position;
+
+                if (type == TLJournal.ACTION) {
+                    TLActions.read(in);
+                } else {
+                    TLJournal.readFields(in, scratch);
+                }
+                addRecord(type, turtle, time, offset);
+            }
+        } catch (EOFException e) {
+            /* the journal was cut short in the middle of its last record */
+        }
+
+        sortByTime();
+        findActionEnds();
+    }
+
+    private void addRecord(byte type, int turtle, long time, long offset) {
+        if (recordCount == types.length) {
+            int capacity = 2 * recordCount;
+            types = Arrays.copyOf(types, capacity);
+            turtles = Arrays.copyOf(turtles, capacity);
+            times = Arrays.copyOf(times, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        types[recordCount] = type;
+        turtles[recordCount] = turtle;
+        times[recordCount] = time;
+        offsets[recordCount] = offset;
+        ++recordCount;
+    }
+
+    /* Live journals are already in order. Headless ones keep each turtle's
+     * own simulated time, so their records are only in order per turtle; the
+     * stable sort keeps them that way.
+     */
+    private void sortByTime() {
+        boolean sorted = true;
+        for (int i = 1; i < recordCount && sorted; ++i) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            return;
+        }
+
+        Integer[] order = new Integer[recordCount];
+        for (int i = 0; i < recordCount; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(times[a], times[b]);
+            }
+        });
+
+        byte[] sortedTypes = new byte[recordCount];
+        int[] sortedTurtles = new int[recordCount];
+        long[] sortedTimes = new long[recordCount];
+        long[] sortedOffsets = new long[recordCount];
+        for (int i = 0; i < recordCount; ++i) {
+            sortedTypes[i] = types[order[i]];
+            sortedTurtles[i] = turtles[order[i]];
+            sortedTimes[i] = times[order[i]];
+            sortedOffsets[i] = offsets[order[i]];
+        }
+        types = sortedTypes;
+        turtles = sortedTurtles;
+        times = sortedTimes;
+        offsets = sortedOffsets;
+    }
+
+    private void findActionEnds() {
+        actionEnds = new int[recordCount];
+        int[] open = new int[0];
+        for (int i = 0; i < recordCount; ++i) {
+            actionEnds[i] = -1;
+            int turtle = turtles[i];
+            if (turtle >= open.length) {
+                int length = open.length;
+                open = Arrays.copyOf(open, Math.max(turtle + 1, 2 * length));
+                Arrays.fill(open, length, open.length, -1);
+            }
+            if (types[i] == TLJournal.ACTION) {
+                open[turtle] = i;
+            } else if (types[i] == TLJournal.END && open[turtle] >= 0) {
+                actionEnds[open[turtle]] = i;
+                open[turtle] = -1;
+            }
+        }
+    }
+
+    /* replays everything once, keeping checkpoints and the drawn paths */
+    private void build() {
+        Cursor cursor = new Cursor();
+        List<Stroke> open = Lists.newArrayList();
+        List<TLHeapTurtleState> copies = Lists.newArrayList();   // latest checkpointed copy of each turtle
+        BitSet changed = new BitSet();
+        while (cursor.position < recordCount) {
+            if (cursor.position % CHECKPOINT_INTERVAL == 0) {
+                addCheckpoint(cursor, copies, changed);
+            }
+
+            int record = cursor.position;
+            int turtle = turtles[record];
+            apply(cursor, record);
+            changed.set(turtle);
+
+            while (paths.size() <= turtle) {
+                paths.add(Lists.<Stroke>newArrayList());
+                open.add(null);
+            }
+            if (types[record] == TLJournal.STATE) {
+                /* like TLPathRecorder, paths only follow the turtle's moves */
+                continue;
+            }
+            TLTurtleState state = cursor.getState(turtle);
+            if (state == null || !state.isPenDown()) {
+                open.set(turtle, null);
+                continue;
+            }
+            Stroke stroke = open.get(turtle);
+            if (stroke == null || !stroke.hasStyleOf(state)) {
+                stroke = new Stroke(state.getColor(), state.getThickness(), state.getPathType());
+                paths.get(turtle).add(stroke);
+                open.set(turtle, stroke);
+            }
+            stroke.addPoint(state.getX(), state.getY(), record);
+        }
+        if (checkpoints.isEmpty() || recordCount % CHECKPOINT_INTERVAL == 0) {
+            addCheckpoint(cursor, copies, changed);
+        }
+    }
+
+    private void addCheckpoint(Cursor cursor, List<TLHeapTurtleState> copies, BitSet changed) {
+        for (int turtle = changed.nextSetBit(0); turtle >= 0; turtle = changed.nextSetBit(turtle + 1)) {
+            while (copies.size() <= turtle) {
+                copies.add(null);
+            }
+            TLHeapTurtleState state = cursor.getState(turtle);
+            TLHeapTurtleState copy = null;
+            if (state != null) {
+                copy = new TLHeapTurtleState();
+                copy.set(state);
+            }
+            copies.set(turtle, copy);
+        }
+
+        boolean keyframe = checkpoints.size() % KEYFRAME_INTERVAL == 0;
+        BitSet included = keyframe? new BitSet() : changed;
+        if (keyframe) {
+            included.set(0, copies.size());
+        }
+
+        Checkpoint checkpoint = new Checkpoint(cursor.position, copies.size(), keyframe, included.cardinality());
+        for (int turtle = included.nextSetBit(0); turtle >= 0; turtle = included.nextSetBit(turtle + 1)) {
+            checkpoint.add(turtle, copies.get(turtle), cursor.getAction(turtle));
+        }
+        checkpoints.add(checkpoint);
+        changed.clear();
+    }
+
+    /* Moves the current cursor to the given checkpoint, taking each turtle
+     * from the latest checkpoint back to the last keyframe that has it.
+     */
+    private void restore(int index) {
+        current.clear();
+        int turtleCount = checkpoints.get(index).turtleCount;
+        BitSet restored = new BitSet(turtleCount);
+        for (int i = index; i >= 0 && restored.cardinality() < turtleCount; --i) {
+            Checkpoint checkpoint = checkpoints.get(i);
+            for (int j = 0; j < checkpoint.count; ++j) {
+                int turtle = checkpoint.turtles[j];
+                if (restored.get(turtle)) {
+                    continue;
+                }
+                restored.set(turtle);
+                TLHeapTurtleState copy = null;
+                if (checkpoint.states[j] != null) {
+                    copy = new TLHeapTurtleState();
+                    copy.set(checkpoint.states[j]);
+                }
+                current.setState(turtle, copy);
+                current.setAction(turtle, checkpoint.actions[j]);
+            }
+            if (checkpoint.keyframe) {
+                break;
+            }
+        }
+        current.position = checkpoints.get(index).position;
+    }
+
+    private void apply(Cursor cursor, int record) {
+        int turtle = turtles[record];
+        switch (types[record]) {
+        case TLJournal.TURTLE:
+            cursor.setState(turtle, new TLHeapTurtleState());
+            readFields(record, cursor.getState(turtle));
+            cursor.setAction(turtle, -1);
+            break;
+        case TLJournal.STATE:
+            readFields(record, cursor.getState(turtle));
+            break;
+        case TLJournal.ACTION:
+            cursor.setAction(turtle, record);
+            break;
+        case TLJournal.END:
+            readFields(record, cursor.getState(turtle));
+            cursor.setAction(turtle, -1);
+            break;
+        default:
+            throw new IllegalStateException("Unknown journal record type " + types[record] + ".");
+        }
+        ++cursor.position;
+    }
+
+    private void readFields(int record, TLTurtleState state) {
+        try {
+            TLJournal.readFields(openPayload(record), state);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private TLAction readAction(int record) {
+        try {
+            return TLActions.read(openPayload(record));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private DataInputStream openPayload(int record) {
+        return new DataInputStream(new MappedInput(segments, size, offsets[record]));
+    }
+
+    /* the committed state of every turtle after the first position records */
+    private static class Cursor {
+
+        private int position;
+        private final List<TLHeapTurtleState> states = Lists.newArrayList();
+        private int[] actions = new int[0];
+
+        TLHeapTurtleState getState(int turtle) {
+            return turtle < states.size()? states.get(turtle) : null;
+        }
+
+        void setState(int turtle, TLHeapTurtleState state) {
+            while (states.size() <= turtle) {
+                states.add(null);
+            }
+            states.set(turtle, state);
+        }
+
+        int getAction(int turtle) {
+            return turtle < actions.length? actions[turtle] : -1;
+        }
+
+        void setAction(int turtle, int record) {
+            if (turtle >= actions.length) {
+                int length = actions.length;
+                actions = Arrays.copyOf(actions, Math.max(turtle + 1, 2 * length));
+                Arrays.fill(actions, length, actions.length, -1);
+            }
+            actions[turtle] = record;
+        }
+
+        void clear() {
+            position = 0;
+            states.clear();
+            Arrays.fill(actions, -1);
+        }
+    }
+
+    /* turtle states as of a position in the records, copied once and never
+     * changed after
+     */
+    private static class Checkpoint {
+
+        Checkpoint(int position, int turtleCount, boolean keyframe, int capacity) {
+            this.position = position;
+            this.turtleCount = turtleCount;
+            this.keyframe = keyframe;
+            this.turtles = new int[capacity];
+            this.states = new TLHeapTurtleState[capacity];
+            this.actions = new int[capacity];
+        }
+
+        final int position;
+        final int turtleCount;                   // known by this position
+        final boolean keyframe;                  // has every turtle
+        final int[] turtles;
+        final TLHeapTurtleState[] states;        // null for turtles without one yet
+        final int[] actions;
+        int count;
+
+        void add(int turtle, TLHeapTurtleState state, int action) {
+            turtles[count] = turtle;
+            states[count] = state;
+            actions[count] = action;
+            ++count;
+        }
+    }
+
+    /* Reads the mapped file from a position on, across the segments it is
+     * mapped in. Not buffered, so position is always exact.
+     */
+    private static class MappedInput extends InputStream {
+
+        MappedInput(MappedByteBuffer[] segments, long size, long position) {
+            this.segments = segments;
+            this.size = size;
+            this.position = position;
+        }
+
+        private final MappedByteBuffer[] segments;
+        private final long size;
+        long position;
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            int value = segments[(int) (position >>> SEGMENT_SHIFT)].get(getSegmentOffset(position)) & 0xff;
+            ++position;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            /* no further than the end of the current segment */
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+            int offset = getSegmentOffset(position);
+            int count = Math.min(len, segment.limit() - offset);
+            segment.position(offset);
+            segment.get(b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        private static int getSegmentOffset(long position) {
+            return (int) (position & ((1L << SEGMENT_SHIFT) - 1));
+        }
+    }
+
+    /* one path as recorded, with the record that added each point */
+    private static class Stroke {
+
+        Stroke(Color color, float thickness, TLPathType pathType) {
+            this.color = color;
+            this.thickness = thickness;
+            this.pathType = pathType;
+        }
+
+        final Color color;
+        final float thickness;
+        final TLPathType pathType;
+        float[] xs = new float[8], ys = new float[8];
+        int[] positions = new int[8];
+        int count;
+
+        boolean hasStyleOf(TLTurtleState state) {
+            return color.equals(state.getColor())
+                    && thickness == state.getThickness()
+                    && pathType == state.getPathType();
+        }
+
+        void addPoint(float x, float y, int record) {
+            if (count > 0 && xs[count - 1] == x && ys[count - 1] == y) {
+                return;
+            }
+            if (count == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * count);
+                ys = Arrays.copyOf(ys, 2 * count);
+                positions = Arrays.copyOf(positions, 2 * count);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            positions[count] = record;
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.arper.turtle.impl;
+
+import java.util.List;
+import java.util.Map;
+
+import org.arper.turtle.TLTurtle;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+/* Records the paths drawn by each turtle, and the simulated time each turtle
+ * has spent, without any display. Used by headless simulations in place of
+ * the canvas renderers.
+ *
+ * Each turtle's record is made once, with its handle, and kept on the
+ * handle, so simulation steps never look it up; the weak map is only for
+ * finding a turtle's paths afterwards.
+ */
+public class TLPathRecorder {
+
+    public TLPathRecorder() {
+        this.records = new MapMaker().weakKeys().makeMap();
+    }
+
+    private final Map<TLTurtle, TurtleRecord> records;
+
+    TurtleRecord register(TLTurtle turtle) {
+        TurtleRecord record = new TurtleRecord();
+        records.put(turtle, record);
+        return record;
+    }
+
+    void update(TLTurtleHandle handle) {
+        handle.getRecord().update(handle.getState());
+    }
+
+    void advance(TLTurtleHandle handle, float seconds) {
+        handle.getRecord().advance(seconds);
+    }
+
+    float getElapsedSeconds(TLTurtleHandle handle) {
+        return handle.getRecord().getElapsedSeconds();
+    }
+
+    /* empty for turtles of other simulations */
+    public List<TLRecordedPath> getPaths(TLTurtle turtle) {
+        TurtleRecord record = records.get(turtle);
+        return record != null? record.getPaths() : ImmutableList.<TLRecordedPath>of();
+    }
+
+    public float getElapsedSeconds() {
+        float max = 0;
+        for (TurtleRecord record : records.values()) {
+            max = Math.max(max, record.getElapsedSeconds());
+        }
+        return max;
+    }
+
+    static final class TurtleRecord {
+
+        private final List<TLRecordedPath> paths = Lists.newArrayList();
+        private TLRecordedPath currentPath;
+        private float elapsedSeconds;
+
+        private synchronized void update(TLTurtleState state) {
+            if (!state.isPenDown()) {
+                currentPath = null;
+                return;
+            }
+
+            if (currentPath == null || !currentPath.hasStyleOf(state)) {
+                currentPath = new TLRecordedPath(state.getColor(), state.getThickness(), state.getPathType());
+                paths.add(currentPath);
+            }
+            currentPath.addPoint(state.getX(), state.getY());
+        }
+
+        private synchronized void advance(float seconds) {
+            elapsedSeconds += seconds;
+        }
+
+        private synchronized List<TLRecordedPath> getPaths() {
+            ImmutableList.Builder<TLRecordedPath> drawn = ImmutableList.builder();
+            for (TLRecordedPath path : paths) {
+                if (path.getPoints().size() > 1) {
+                    drawn.add(path);
+                }
+            }
+            return drawn.build();
+        }
+
+        private synchronized float getElapsedSeconds() {
+            return elapsedSeconds;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.Collections;
+import java.util.List;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.collect.Lists;
+
+public class TLRecordedPath {
+
+    public TLRecordedPath(Color color, float thickness, TLPathType pathType) {
+        this.color = color;
+        this.thickness = thickness;
+        this.pathType = pathType;
+        this.points = Lists.newArrayList();
+    }
+
+    private final Color color;
+    private final float thickness;
+    private final TLPathType pathType;
+    private final List<Point2D.Float> points;
+
+    public Color getColor() {
+        return color;
+    }
+
+    public float getThickness() {
+        return thickness;
+    }
+
+    public TLPathType getPathType() {
+        return pathType;
+    }
+
+    public List<Point2D.Float> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    boolean hasStyleOf(TLTurtleState state) {
+        return color.equals(state.getColor())
+                && thickness == state.getThickness()
+                && pathType == state.getPathType();
+    }
+
+    void addPoint(float x, float y) {
+        if (!points.isEmpty()) {
+            Point2D.Float last = points.get(points.size() - 1);
+            if (last.x == x && last.y == y) {
+                return;
+            }
+        }
+        points.add(new Point2D.Float(x, y));
+    }
+}
@@ -3,7 +3,9 @@ package org.arper.turtle.impl;
 import java.awt.Graphics2D;
 
 public interface TLRenderer {
-    void preRender(Graphics2D g);
+    void preRender();
     void render(Graphics2D g);
-    void markDirty();
+
+    /* May be called from any thread. */
+    void publish(TLTurtleSnapshot snapshot);
 }
@@ -0,0 +1,29 @@
+package org.arper.turtle.impl;
+
+/* Work for a single turtle that is advanced step by step by one of the
+ * simulation engines until it reports that it has finished.
+ */
+abstract class TLSimulationJob {
+
+    TLSimulationJob(TLTurtleHandle handle) {
+        this.handle = handle;
+        this.state = handle.getState();
+    }
+
+    final TLTurtleHandle handle;
+    final TLTurtleState state;
+
+    long lastStepMicros;
+
+    /* Advances the job by the given simulated seconds, returning true once
+     * it has no more work to do.
+     */
+    abstract boolean step(float seconds);
+
+    /* Simulated seconds until the job's current action completes. */
+    abstract float getCompletionTime();
+
+    /* Called by the engine once, after step() has returned true. */
+    void finish() {
+    }
+}
@@ -1,54 +1,95 @@
 package org.arper.turtle.impl;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.arper.turtle.TLSimulationSettings;
-import org.arper.turtle.TLTurtle;
+import org.arper.turtle.config.TLApplicationConfig;
+import org.arper.turtle.config.TLSimulationEngine;
+import org.arper.turtle.config.TLStateStorage;
+import org.arper.turtle.config.TLWaitPolicy;
 
 import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 
 
 public class TLSimulator {
 
     public static final float SIMULATION_EPSILON = .0001f;
 
-	public TLSimulator(int numSimulationCores,
-	                   long interpolationStepMicros,
-                       long maxInterpolationStutterMicros,
-	                   long maxBlockingSimulationPeriodMicros) {
-		settings = new TLSimulationSettings();
-		actionScheduler = createScheduler(numSimulationCores);
-
-		this.interpolationStepMicros = interpolationStepMicros;
-		this.maxInterpolationStutterMicros = maxInterpolationStutterMicros;
-		this.maxBlockingSimulationPeriodMicros = maxBlockingSimulationPeriodMicros;
-		this.turtleState = CacheBuilder.newBuilder()
-		    .concurrencyLevel(numSimulationCores)
-		    .weakKeys()
-		    .build(new CacheLoader<TLTurtle, TLTurtleState>() {
-                @Override
-                public TLTurtleState load(TLTurtle key) throws Exception {
-                    return new TLTurtleState();
-                }
-		    });
+	public TLSimulator(TLApplicationConfig config) {
+	    int numSimulationCores = config.getSimulationCores();
 
+		settings = new TLSimulationSettings();
+		if (config.isHeadless()) {
+		    /* Headless simulations run on a virtual clock: every action completes
+		     * immediately and only advances the turtle's recorded time.
+		     */
+		    actionScheduler = null;
+		    fixedStepEngine = null;
+		    pathRecorder = new TLPathRecorder();
+		    settings.unpause();
+		} else if (config.getSimulationEngine() == TLSimulationEngine.FixedStep) {
+		    actionScheduler = null;
+		    fixedStepEngine = new TLFixedStepEngine(this, numSimulationCores,
+		            config.getSimulationStepMicros(), config.getSimulationMaxStutterMicros());
+		    pathRecorder = null;
+		} else {
+		    actionScheduler = createScheduler(numSimulationCores);
+		    fixedStepEngine = null;
+		    pathRecorder = null;
+		}
+
+		this.interpolationStepMicros = config.getSimulationStepMicros();
+		this.maxInterpolationStutterMicros = config.getSimulationMaxStutterMicros();
+		this.maxBlockingSimulationPeriodMicros = config.getSimulationMaxBusyWaitMicros();
+		this.waitPolicy = config.getSimulationWaitPolicy();
+		this.spinThresholdMicros = config.getSimulationSpinThresholdMicros();
+		this.stateStore = config.getTurtleStateStorage() == TLStateStorage.Arrays?
+		        new TLTurtleStateStore() : null;
+		this.journal = openJournal(config.getJournalFile(), pathRecorder);
+		this.stateTrace = openStateTrace(config.getStateTraceFile(), pathRecorder);
 	}
 
     private final TLSimulationSettings settings;
     private final long interpolationStepMicros;
     private final long maxInterpolationStutterMicros;
     private final long maxBlockingSimulationPeriodMicros;
+    private final TLWaitPolicy waitPolicy;
+    private final long spinThresholdMicros;
     private final ScheduledExecutorService actionScheduler;
+    private final TLFixedStepEngine fixedStepEngine;
+    private final TLPathRecorder pathRecorder;
+
+    private final TLTurtleStateStore stateStore;
+    private volatile TLJournal journal;
+    private final TLStateTrace stateTrace;
 
-    private final LoadingCache<TLTurtle, TLTurtleState> turtleState;
+    private static TLJournal openJournal(File file, TLPathRecorder virtualClock) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new TLJournal(file, virtualClock);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static TLStateTrace openStateTrace(File file, TLPathRecorder virtualClock) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new TLStateTrace(file, virtualClock);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
 
 	private static ScheduledExecutorService createScheduler(int poolSize) {
 	    return Executors.newScheduledThreadPool(poolSize, new ThreadFactory() {
@@ -62,22 +103,70 @@ public class TLSimulator {
 	}
 
 	public void shutdown() {
-	    actionScheduler.shutdownNow();
+	    if (actionScheduler != null) {
+	        actionScheduler.shutdownNow();
+	    }
+	    if (fixedStepEngine != null) {
+	        fixedStepEngine.shutdown();
+	    }
+	    TLJournal journal = this.journal;
+	    if (journal != null) {
+	        journal.close();
+	    }
+	    if (stateTrace != null) {
+	        stateTrace.close();
+	    }
 	}
 
 	public TLSimulationSettings getSettings() {
 	    return settings;
 	}
 
-	public TLTurtleState getTurtleState(TLTurtle turtle) {
-	    try {
-            return turtleState.get(turtle);
-        } catch (ExecutionException e) {
-            throw Throwables.propagate(e);
-        }
+	public boolean isHeadless() {
+	    return pathRecorder != null;
+	}
+
+	public TLPathRecorder getPathRecorder() {
+	    return pathRecorder;
+	}
+
+	/* null unless the configuration asks for one or requireJournal() was called */
+	public TLJournal getJournal() {
+	    return journal;
+	}
+
+	/* The journal, opening one in a temporary file if there is none yet.
+	 * Turtles are journaled from their next change on.
+	 */
+	public synchronized TLJournal requireJournal() {
+	    if (journal == null) {
+	        try {
+	            File file = File.createTempFile("tl-journal", ".tlj");
+	            file.deleteOnExit();
+	            journal = new TLJournal(file, pathRecorder);
+	        } catch (IOException e) {
+	            throw Throwables.propagate(e);
+	        }
+	    }
+	    return journal;
+	}
+
+	/* null unless the configuration asks for one */
+	public TLStateTrace getStateTrace() {
+	    return stateTrace;
+	}
+
+	public TLTurtleState createTurtleState() {
+	    return stateStore != null? stateStore.allocate() : new TLHeapTurtleState();
 	}
 
-	public void invokeAndWait(TLAction a, TLTurtle t) {
+	public void releaseTurtleState(TLTurtleState state) {
+	    if (stateStore != null) {
+	        stateStore.release(state);
+	    }
+	}
+
+	public void invokeAndWait(TLAction a, TLTurtleHandle t) {
 	    TLAwtUtilities.assertOffAwtThread();
 
 	    try {
@@ -87,11 +176,23 @@ public class TLSimulator {
 	    }
 	}
 
-	private void markDirty(TLTurtle t) {
-	    TLSingletonContext.get().getWindow().getCanvas().getRenderer(t).markDirty();
+	void markDirty(TLTurtleHandle t) {
+	    synchronized (t) {
+	        if (t.isRemoved()) {
+	            return;
+	        }
+	        if (stateTrace != null) {
+	            stateTrace.record(t);
+	        }
+	        if (pathRecorder != null) {
+	            pathRecorder.update(t);
+	            return;
+	        }
+	        t.publishState();
+	    }
 	}
 
-	private float realToSimulationTime(float time) {
+	float realToSimulationTime(float time) {
 	    return settings.isPaused()? 0 : time * settings.getAnimationSpeed();
 	}
 
@@ -99,69 +200,145 @@ public class TLSimulator {
 	    return settings.isPaused()? Float.MAX_VALUE : time / settings.getAnimationSpeed();
 	}
 
-	private void invokeAndWaitInterruptibly(TLAction a, TLTurtle t) throws InterruptedException {
-        float spinEndTime = 0;
+	private void invokeVirtually(TLAction a, TLTurtleHandle t) {
+	    synchronized (t) {
+	        t.checkAttached();
+	        TLTurtleState state = t.getState();
+	        pathRecorder.update(t);
+	        float seconds = a.getCompletionTime(state);
+	        a.perform(state, Float.MAX_VALUE);
+	        pathRecorder.advance(t, seconds);
+	        pathRecorder.update(t);
+	        if (stateTrace != null) {
+	            stateTrace.record(t);
+	        }
+	    }
+	}
+
+	private void invokeAndWaitInterruptibly(TLAction a, TLTurtleHandle t) throws InterruptedException {
+	    if (pathRecorder != null) {
+	        t.actionStarted(a);
+	        invokeVirtually(a, t);
+	        t.actionFinished();
+	        if (Thread.interrupted()) {
+	            throw new InterruptedException();
+	        }
+	        return;
+	    }
+
+        long waitEndTime = 0;
         synchronized (t) {
-            float estimatedTimeMicros = a.getCompletionTime(getTurtleState(t))
+            t.checkAttached();
+            float estimatedTimeMicros = a.getCompletionTime(t.getState())
                     * MICROS_IN_SECOND;
             estimatedTimeMicros = simulationToRealTime(estimatedTimeMicros);
 
             if (estimatedTimeMicros < maxBlockingSimulationPeriodMicros) {
                 long startMicros = currentTimeMicros();
-                a.perform(getTurtleState(t), Float.MAX_VALUE);
-                spinEndTime = startMicros + estimatedTimeMicros;
+                t.actionStarted(a);
+                a.perform(t.getState(), Float.MAX_VALUE);
+                t.actionFinished();
+                waitEndTime = startMicros + (long) Math.ceil(estimatedTimeMicros);
             }
         }
 
         /* If we completed the action without the need to schedule interpolation,
          * simply simulate execution and return
          */
-        if (spinEndTime > 0) {
+        if (waitEndTime > 0) {
             markDirty(t);
-            spin(spinEndTime);
+            waitUntil(waitEndTime);
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
             return;
         }
 
-        TLActionInterpolationRunnable r = new TLActionInterpolationRunnable(a, t);
-        r.schedule();
-        r.latch.await();
+        TLActionJob job = new TLActionJob(a, t);
+        t.actionStarted(a);
+        submit(job);
+        job.await();
+        t.checkAttached();
+	}
+
+	public TLCommandQueue createCommandQueue(TLTurtleHandle t) {
+	    return new TLCommandQueue(this, t);
+	}
+
+	void drain(TLCommandQueue queue) {
+	    if (pathRecorder != null) {
+	        while (queue.advance()) {
+	            try {
+	                invokeVirtually(queue.currentAction(), queue.handle);
+	                queue.completeCurrent();
+	            } catch (RuntimeException e) {
+	                queue.failCurrent(e);
+	            }
+	        }
+	    } else {
+	        submit(queue);
+	    }
+	}
+
+	private void submit(TLSimulationJob job) {
+	    if (fixedStepEngine != null) {
+	        fixedStepEngine.submit(job);
+	    } else {
+	        job.lastStepMicros = currentTimeMicros();
+	        new TLActionInterpolationRunnable(job).schedule();
+	    }
+	}
+
+	private void waitUntil(long endTimeMicros) {
+	    switch (waitPolicy) {
+	    case Park:
+	        park(endTimeMicros);
+	        break;
+	    case Hybrid:
+	        park(endTimeMicros - spinThresholdMicros);
+	        spin(endTimeMicros);
+	        break;
+	    case Spin:
+	    default:
+	        spin(endTimeMicros);
+	        break;
+	    }
+	}
+
+	private static void park(long endTimeMicros) {
+	    long remainingMicros;
+	    while ((remainingMicros = endTimeMicros - currentTimeMicros()) > 0) {
+	        LockSupport.parkNanos(remainingMicros * NANOS_IN_MICRO);
+	        if (Thread.currentThread().isInterrupted()) {
+	            return;
+	        }
+	    }
 	}
 
-	private static void spin(float endTimeMicros) {
+	private static void spin(long endTimeMicros) {
 	    while (currentTimeMicros() < endTimeMicros) {
 	        /* spinning */
 	    }
 	}
 
     private static final long NANOS_IN_MICRO = 1000L;
-    private static final float MICROS_IN_SECOND = 1000000.0f;
+    static final float MICROS_IN_SECOND = 1000000.0f;
 
-	private static long currentTimeMicros() {
+	static long currentTimeMicros() {
 	    return System.nanoTime() / NANOS_IN_MICRO;
 	}
 
 	private class TLActionInterpolationRunnable implements Runnable {
 
-	    public TLActionInterpolationRunnable(TLAction action, TLTurtle turtle) {
-            this.action = action;
-            this.turtle = turtle;
-            this.latch = new CountDownLatch(1);
-
-            lastExecutionTimeMicros = currentTimeMicros();
+	    public TLActionInterpolationRunnable(TLSimulationJob job) {
+            this.job = job;
         }
 
-        private final TLAction action;
-        private final TLTurtle turtle;
-	    private final CountDownLatch latch;
-
-        private long lastExecutionTimeMicros;
+        private final TLSimulationJob job;
 
         private long nextScheduleTimeMicros() {
             long estimatedTimeMicros = (long) Math.ceil(
-                    simulationToRealTime(action.getCompletionTime(getTurtleState(turtle)))
+                    simulationToRealTime(job.getCompletionTime())
                     * MICROS_IN_SECOND);
             return Math.min(estimatedTimeMicros, interpolationStepMicros);
         }
@@ -173,20 +350,30 @@ public class TLSimulator {
         @Override
         public void run() {
             long time = currentTimeMicros();
-            float elapsedMicros = (time - lastExecutionTimeMicros);
+            float elapsedMicros = (time - job.lastStepMicros);
             if (elapsedMicros > maxInterpolationStutterMicros) {
                 elapsedMicros = maxInterpolationStutterMicros;
             }
 
             float elapsedSeconds = realToSimulationTime(elapsedMicros) / MICROS_IN_SECOND;
 
-            if (action.perform(getTurtleState(turtle), elapsedSeconds) > 0) {
-                latch.countDown();
+            boolean finished;
+            try {
+                synchronized (job.handle) {
+                    finished = job.step(elapsedSeconds);
+                }
+            } catch (RuntimeException e) {
+                TLLogging.error("Turtle action failed during simulation step.", e);
+                finished = true;
+            }
+
+            if (finished) {
+                job.finish();
             } else {
-                lastExecutionTimeMicros = time;
+                job.lastStepMicros = time;
                 schedule();
             }
-            markDirty(turtle);
+            markDirty(job.handle);
         }
 
 	}
@@ -1,16 +1,56 @@
 package org.arper.turtle.impl;
 
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.base.Preconditions;
+
+/* The context new turtles attach to. Normally the single application's,
+ * published by TLApplication; where several contexts share the JVM (see
+ * TLBatchRunner), the threads working for one of them bind it, and the
+ * binding takes precedence on that thread. Batch contexts are never
+ * published, so while batch runs are active a thread with neither a
+ * binding nor a published application could only guess, and fails instead.
+ */
 public class TLSingletonContext {
 
-    private static TLContext instance;
+    private static volatile TLContext instance;
+    private static final ThreadLocal<TLContext> bound = new ThreadLocal<TLContext>();
+    private static final AtomicInteger activeBatchRuns = new AtomicInteger();
 
     public static TLContext get() {
-        return instance;
+        TLContext context = bound.get();
+        if (context == null) {
+            context = instance;
+        }
+        Preconditions.checkState(context != null || activeBatchRuns.get() == 0,
+                "No context is bound to this thread while batch runs are active."
+                + " Turtles of a batch run must be made by its objective's threads.");
+        return context;
     }
 
     public static void set(TLContext context) {
         TLSingletonContext.instance = context;
     }
 
+    /* Binds the context to the current thread, or unbinds it for null.
+     * Returns the previous binding, to be restored when done.
+     */
+    public static TLContext bind(TLContext context) {
+        TLContext previous = bound.get();
+        if (context != null) {
+            bound.set(context);
+        } else {
+            bound.remove();
+        }
+        return previous;
+    }
+
+    public static void enterBatchRun() {
+        activeBatchRuns.incrementAndGet();
+    }
+
+    public static void exitBatchRun() {
+        activeBatchRuns.decrementAndGet();
+    }
+
 }
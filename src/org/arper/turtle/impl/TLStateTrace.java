@@ -0,0 +1,281 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Appends a snapshot of a turtle's state after every simulation step to a
+ * memory mapped file, for runs too long to keep their history on the heap.
+ * Read back with TLStateTraceReader.
+ *
+ * The file is a HEADER_SIZE byte header followed by RECORD_SIZE byte
+ * records, all big endian:
+ *
+ *   0  long   time (microseconds since the trace was opened, or the
+ *             turtle's simulated time for headless simulations)
+ *   8  int    turtle id
+ *   12 float  x, y, heading, thickness
+ *   28 short  color index
+ *   30 byte   flags (PEN_DOWN)
+ *   31 byte   kind (STATE, COLOR or INDEX)
+ *
+ * A COLOR record adds its ARGB value (at 8) to the palette under the next
+ * color index, and points back to the previous COLOR record (long at 12).
+ * The last record of every CHUNK_RECORDS is an INDEX record holding the
+ * largest time so far (at 0) and the last COLOR record (long at 12), so
+ * readers can binary search for a time and load the palette without
+ * scanning the file. The header's record count is only brought up to date
+ * with every INDEX record and on close(), so a run that dies loses at most
+ * its last chunk, and whatever was still staged in its batches.
+ *
+ * Simulation threads do not write the file one record at a time: they
+ * stage their STATE records in one of a fixed set of batches, picked by
+ * thread id, and take the trace's lock once per BATCH_RECORDS of them, so
+ * the shards of a TLFixedStepEngine do not queue up behind each other. The
+ * set is sized by the processors rather than the threads, so per-turtle
+ * controller threads do not each keep a batch. Records are therefore only
+ * in order per thread. A new color's COLOR record is written as soon as it
+ * is first seen, so it always comes before the records that use it.
+ *
+ * The file is mapped MAP_SIZE bytes at a time; mappings are released by the
+ * garbage collector, as the platform offers no other way. As it cannot be
+ * truncated below a live mapping, the file is left at the size of its last
+ * mapping and the header's record count says how much of it is in use.
+ */
+public class TLStateTrace {
+
+    static final int MAGIC = 0x544c5431;   // "TLT1"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+    static final int CHUNK_RECORDS = 4096;
+    static final long MAP_SIZE = (long) RECORD_SIZE * CHUNK_RECORDS * 512;
+    static final int BATCH_RECORDS = 256;
+
+    /* header fields */
+    static final int HEADER_RECORD_COUNT = 16;
+
+    /* record kinds and flags */
+    static final byte STATE = 0, COLOR = 1, INDEX = 2;
+    static final byte PEN_DOWN = 1;
+
+    public TLStateTrace(File file, TLPathRecorder virtualClock) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.virtualClock = virtualClock;
+        this.startMicros = TLSimulator.currentTimeMicros();
+        this.palette = new ConcurrentHashMap<Color, Short>();
+        /* the processor count, rounded up to a power of two */
+        this.batches = new Batch[Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)];
+        for (int i = 0; i < batches.length; ++i) {
+            batches[i] = new Batch();
+        }
+
+        channel.truncate(0);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putShort(4, (short) VERSION);
+        header.putShort(6, (short) RECORD_SIZE);
+        header.putInt(8, CHUNK_RECORDS);
+        header.putLong(HEADER_RECORD_COUNT, 0);
+        lastColorRecord = -1;
+
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "TLStateTraceShutdownThread");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final TLPathRecorder virtualClock;     // null for real time
+    private final long startMicros;
+    private final MappedByteBuffer header;
+    private final Map<Color, Short> palette;       // added to under this
+    private final Batch[] batches;                 // a power of two of them
+    private final Thread shutdownHook;
+    private volatile boolean closed;               // no more records are taken
+
+    /* guarded by this */
+    private MappedByteBuffer region;
+    private long regionStart;                      // offset of region past the header
+    private long recordCount;
+    private long maxMicros;
+    private long lastColorRecord;
+    private boolean stopped;                       // no more are written
+
+    /* the records written to the file so far */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /* records the turtle's current state */
+    void record(TLTurtleHandle handle) {
+        if (closed) {
+            return;
+        }
+
+        TLTurtleState state = handle.getState();
+        long micros = virtualClock != null
+                ? (long) (virtualClock.getElapsedSeconds(handle) * TLSimulator.MICROS_IN_SECOND)
+                : TLSimulator.currentTimeMicros() - startMicros;
+        Batch batch = batches[(int) Thread.currentThread().getId() & (batches.length - 1)];
+        synchronized (batch) {
+            int at = batch.count * RECORD_SIZE;
+            ByteBuffer records = batch.records;
+            records.putLong(at, micros);
+            records.putInt(at + 8, handle.getId());
+            records.putFloat(at + 12, state.getX());
+            records.putFloat(at + 16, state.getY());
+            records.putFloat(at + 20, state.getHeading());
+            records.putFloat(at + 24, state.getThickness());
+            records.putShort(at + 28, getColorIndex(state.getColor()));
+            records.put(at + 30, state.isPenDown()? PEN_DOWN : 0);
+            records.put(at + 31, STATE);
+            if (++batch.count == BATCH_RECORDS) {
+                write(batch);
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        for (Batch batch : batches) {
+            synchronized (batch) {
+                write(batch);
+            }
+        }
+
+        synchronized (this) {
+            try {
+                if (!stopped) {
+                    header.putLong(HEADER_RECORD_COUNT, recordCount);
+                    header.force();
+                }
+            } finally {
+                stopped = true;
+                region = null;
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    TLLogging.error("Unable to close the state trace.", e);
+                }
+            }
+        }
+
+        /* so closed traces are not kept alive until exit */
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            /* closed by the hook itself, as the JVM shuts down */
+        }
+    }
+
+    /* copies the batch's records to the file; the caller holds its lock */
+    private synchronized void write(Batch batch) {
+        ByteBuffer records = batch.records;
+        try {
+            for (int i = 0; i < batch.count && !stopped; ++i) {
+                int from = i * RECORD_SIZE;
+                maxMicros = Math.max(maxMicros, records.getLong(from));
+                int at = next();
+                for (int offset = 0; offset < RECORD_SIZE; offset += 8) {
+                    region.putLong(at + offset, records.getLong(from + offset));
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            batch.count = 0;
+        }
+    }
+
+    private short getColorIndex(Color color) {
+        Short index = palette.get(color);
+        return index != null? index : addColor(color);
+    }
+
+    private synchronized short addColor(Color color) {
+        Short index = palette.get(color);
+        if (index != null) {
+            return index;
+        }
+        if (palette.size() > Short.MAX_VALUE) {
+            /* out of indices; the reader shows these as the last color */
+            return Short.MAX_VALUE;
+        }
+
+        index = (short) palette.size();
+        palette.put(color, index);
+        if (stopped) {
+            return index;
+        }
+        try {
+            int at = next();
+            region.putLong(at, 0);
+            region.putInt(at + 8, color.getRGB());
+            region.putLong(at + 12, lastColorRecord);
+            region.putShort(at + 28, index);
+            region.put(at + 31, COLOR);
+            lastColorRecord = recordCount - 1;
+        } catch (IOException e) {
+            fail(e);
+        }
+        return index;
+    }
+
+    /* claims the next record, returning its position in the region */
+    private int next() throws IOException {
+        if (recordCount % CHUNK_RECORDS == CHUNK_RECORDS - 1) {
+            int at = claim();
+            region.putLong(at, maxMicros);
+            region.putInt(at + 8, (int) (recordCount / CHUNK_RECORDS - 1));
+            region.putLong(at + 12, lastColorRecord);
+            region.put(at + 31, INDEX);
+            header.putLong(HEADER_RECORD_COUNT, recordCount);
+        }
+        return claim();
+    }
+
+    private int claim() throws IOException {
+        long position = recordCount * RECORD_SIZE;
+        if (region == null || position >= regionStart + MAP_SIZE) {
+            regionStart = position - position % MAP_SIZE;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + regionStart, MAP_SIZE);
+        }
+        ++recordCount;
+        return (int) (position - regionStart);
+    }
+
+    /* the trace is never worth failing the run over */
+    private void fail(IOException e) {
+        TLLogging.error("Unable to write the state trace; no more will be recorded.", e);
+        closed = true;
+        stopped = true;
+    }
+
+    /* records of the threads sharing it that are not in the file yet, in
+     * file layout
+     */
+    private static class Batch {
+
+        final ByteBuffer records = ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE);
+        int count;
+    }
+}
@@ -0,0 +1,186 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/* Reads a trace written by TLStateTrace straight from the mapped file, so
+ * that even very long traces can be scrubbed through without copying them
+ * onto the heap. Records are addressed by their index; only STATE records
+ * hold turtle states, the others are bookkeeping that nextState() skips.
+ *
+ *   TLStateTraceReader trace = new TLStateTraceReader(file);
+ *   for (long r = trace.nextState(trace.seek(micros)); r >= 0; r = trace.nextState(r + 1)) {
+ *       ... trace.getX(r), trace.getY(r) ...
+ *   }
+ *
+ * Seeking is by the traced time: exact for real time traces written by a
+ * single thread, and otherwise a lower bound, as records are only in order
+ * per writing thread, and headless turtles each keep their own simulated
+ * time.
+ */
+public class TLStateTraceReader implements Closeable {
+
+    public TLStateTraceReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        FileChannel channel = this.file.getChannel();
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TLStateTrace.HEADER_SIZE);
+        if (header.getInt(0) != TLStateTrace.MAGIC) {
+            throw new IOException("Not a state trace.");
+        }
+        if (header.getShort(4) != TLStateTrace.VERSION
+                || header.getShort(6) != TLStateTrace.RECORD_SIZE
+                || header.getInt(8) != TLStateTrace.CHUNK_RECORDS) {
+            throw new IOException("Unsupported state trace version " + header.getShort(4) + ".");
+        }
+
+        long available = (channel.size() - TLStateTrace.HEADER_SIZE) / TLStateTrace.RECORD_SIZE;
+        this.recordCount = Math.min(available, header.getLong(TLStateTrace.HEADER_RECORD_COUNT));
+
+        int regionCount = (int) ((recordCount * TLStateTrace.RECORD_SIZE + TLStateTrace.MAP_SIZE - 1)
+                / TLStateTrace.MAP_SIZE);
+        this.regions = new MappedByteBuffer[regionCount];
+        for (int i = 0; i < regionCount; ++i) {
+            long start = i * TLStateTrace.MAP_SIZE;
+            long size = Math.min(TLStateTrace.MAP_SIZE, recordCount * TLStateTrace.RECORD_SIZE - start);
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, TLStateTrace.HEADER_SIZE + start, size);
+        }
+
+        this.palette = loadPalette();
+    }
+
+    private final RandomAccessFile file;
+    private final long recordCount;
+    private final MappedByteBuffer[] regions;
+    private final Color[] palette;
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /* the first record at or after the given time, or getRecordCount() */
+    public long seek(long micros) {
+        /* the INDEX records give the largest time up to the end of each chunk */
+        long low = 0, high = recordCount / TLStateTrace.CHUNK_RECORDS;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getTimeMicros(getIndexRecord(middle)) < micros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (long record = low * TLStateTrace.CHUNK_RECORDS; record < recordCount; ++record) {
+            if (getKind(record) == TLStateTrace.STATE && getTimeMicros(record) >= micros) {
+                return record;
+            }
+        }
+        return recordCount;
+    }
+
+    /* the first STATE record at or after the given one, or -1 */
+    public long nextState(long record) {
+        for (; record < recordCount; ++record) {
+            if (getKind(record) == TLStateTrace.STATE) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isState(long record) {
+        return getKind(record) == TLStateTrace.STATE;
+    }
+
+    public long getTimeMicros(long record) {
+        return region(record).getLong(offset(record));
+    }
+
+    public int getTurtle(long record) {
+        return region(record).getInt(offset(record) + 8);
+    }
+
+    public float getX(long record) {
+        return region(record).getFloat(offset(record) + 12);
+    }
+
+    public float getY(long record) {
+        return region(record).getFloat(offset(record) + 16);
+    }
+
+    public float getHeading(long record) {
+        return region(record).getFloat(offset(record) + 20);
+    }
+
+    public float getThickness(long record) {
+        return region(record).getFloat(offset(record) + 24);
+    }
+
+    public int getColorIndex(long record) {
+        return region(record).getShort(offset(record) + 28);
+    }
+
+    public Color getColor(long record) {
+        int index = getColorIndex(record);
+        return index < palette.length? palette[index] : null;
+    }
+
+    public boolean isPenDown(long record) {
+        return (region(record).get(offset(record) + 30) & TLStateTrace.PEN_DOWN) != 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private byte getKind(long record) {
+        return region(record).get(offset(record) + 31);
+    }
+
+    private static long getIndexRecord(long chunk) {
+        return chunk * TLStateTrace.CHUNK_RECORDS + TLStateTrace.CHUNK_RECORDS - 1;
+    }
+
+    private MappedByteBuffer region(long record) {
+        return regions[(int) (record * TLStateTrace.RECORD_SIZE / TLStateTrace.MAP_SIZE)];
+    }
+
+    private static int offset(long record) {
+        return (int) (record * TLStateTrace.RECORD_SIZE % TLStateTrace.MAP_SIZE);
+    }
+
+    /* follows the COLOR records back from the last one, which is either in
+     * the unindexed tail or pointed to by the last INDEX record
+     */
+    private Color[] loadPalette() {
+        long chunks = recordCount / TLStateTrace.CHUNK_RECORDS;
+        long last = chunks > 0? getColorLink(getIndexRecord(chunks - 1)) : -1;
+        for (long record = chunks * TLStateTrace.CHUNK_RECORDS; record < recordCount; ++record) {
+            if (getKind(record) == TLStateTrace.COLOR) {
+                last = record;
+            }
+        }
+
+        Color[] colors = new Color[0];
+        for (long record = last; record >= 0; record = getColorLink(record)) {
+            int index = getColorIndex(record);
+            if (index >= colors.length) {
+                colors = Arrays.copyOf(colors, index + 1);
+            }
+            colors[index] = new Color(getTurtle(record), true);
+        }
+        return colors;
+    }
+
+    private long getColorLink(long record) {
+        return region(record).getLong(offset(record) + 12);
+    }
+}
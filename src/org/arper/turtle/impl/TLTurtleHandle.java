@@ -0,0 +1,129 @@
+package org.arper.turtle.impl;
+
+import org.arper.turtle.TLTurtle;
+
+import com.google.common.base.Preconditions;
+
+/* Direct references to everything the library keeps for one turtle. Handles
+ * are created when the turtle is registered with its context and released
+ * explicitly when it is removed (see TLContext), so the hot paths never have
+ * to look a turtle up.
+ */
+public final class TLTurtleHandle {
+
+    TLTurtleHandle(int id, TLTurtle turtle, TLTurtleState state, TLRenderer renderer, TLSimulator simulator) {
+        this.id = id;
+        this.turtle = turtle;
+        this.state = state;
+        this.renderer = renderer;
+        this.simulator = simulator;
+        this.record = simulator.isHeadless()? simulator.getPathRecorder().register(turtle) : null;
+    }
+
+    private final int id;
+    private final TLTurtle turtle;
+    private final TLTurtleState state;
+    private final TLRenderer renderer;
+    private final TLSimulator simulator;   // for its journal, which may be opened late
+    private final TLPathRecorder.TurtleRecord record;   // null unless headless
+    private volatile TLTurtleSnapshot snapshot;
+    private volatile boolean removed;
+
+    /* unique within the turtle's context, in order of creation */
+    public int getId() {
+        return id;
+    }
+
+    public TLTurtle getTurtle() {
+        return turtle;
+    }
+
+    public TLTurtleState getState() {
+        return state;
+    }
+
+    /* null for headless simulations */
+    public TLRenderer getRenderer() {
+        return renderer;
+    }
+
+    /* Marks the turtle as removed from its context. Every step and every
+     * write of the state holds this handle's lock and checks first, so once
+     * this returns nothing touches the state again and it may be released.
+     */
+    synchronized void remove() {
+        removed = true;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /* for commands, which fail fast once the turtle has been removed */
+    public void checkAttached() {
+        Preconditions.checkState(!removed, "The turtle has been removed from its application.");
+    }
+
+    /* the turtle's paths and simulated time, for headless simulations */
+    TLPathRecorder.TurtleRecord getRecord() {
+        return record;
+    }
+
+    /* the state as of the last publishState(), or null if never published */
+    public TLTurtleSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /* Called after the turtle's state has been changed directly rather than
+     * by an action: records the change and publishes the new state.
+     */
+    public synchronized void stateChanged() {
+        if (removed) {
+            return;
+        }
+        TLJournal journal = simulator.getJournal();
+        if (journal != null) {
+            journal.recordState(this);
+        }
+        publishState();
+    }
+
+    synchronized void actionStarted(TLAction action) {
+        TLJournal journal = simulator.getJournal();
+        if (journal != null && !removed) {
+            journal.recordActionStarted(this, action);
+        }
+    }
+
+    synchronized void actionFinished() {
+        TLJournal journal = simulator.getJournal();
+        if (journal != null && !removed) {
+            journal.recordActionFinished(this);
+        }
+    }
+
+    /* Hands an immutable copy of the current state to the renderer. Called by
+     * whichever thread just changed the state; does nothing if nothing drawn
+     * has changed since the last call, or if there is nothing to draw to.
+     *
+     * Everything that writes the state holds this handle's lock, and so does
+     * publishing: the copy is never torn, and of two threads publishing at
+     * once, the one that publishes last also publishes the newer state.
+     */
+    public void publishState() {
+        if (renderer == null) {
+            return;
+        }
+
+        synchronized (this) {
+            TLTurtleSnapshot last = snapshot;
+            if (last != null && last.matches(state)) {
+                return;
+            }
+
+            TLTurtleSnapshot next = TLTurtleSnapshot.of(state);
+            snapshot = next;
+            renderer.publish(next);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.base.Objects;
+
+/* An immutable copy of the parts of a turtle's state that are drawn. The
+ * simulation publishes a new one through the turtle's handle whenever the
+ * state changes, so renderers read a consistent state with a single volatile
+ * read instead of copying the live state while it is being mutated. The fill
+ * shape and user data are not drawn and so are deliberately left out.
+ */
+public final class TLTurtleSnapshot {
+
+    public static TLTurtleSnapshot of(TLTurtleState state) {
+        return new TLTurtleSnapshot(state.getX(), state.getY(), state.getHeading(),
+                state.getColor(), state.getPathType(), state.getThickness(),
+                state.isPenDown(), state.getStatus());
+    }
+
+    private TLTurtleSnapshot(float x, float y, float heading, Color color, TLPathType pathType,
+                             float thickness, boolean isPenDown, String status) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.color = color;
+        this.pathType = pathType;
+        this.thickness = thickness;
+        this.isPenDown = isPenDown;
+        this.status = status;
+    }
+
+    private final float x;
+    private final float y;
+    private final float heading;
+    private final Color color;
+    private final TLPathType pathType;
+    private final float thickness;
+    private final boolean isPenDown;
+    private final String status;
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public Point2D.Float getLocation() {
+        return new Point2D.Float(x, y);
+    }
+
+    public float getHeading() {
+        return heading;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public TLPathType getPathType() {
+        return pathType;
+    }
+
+    public float getThickness() {
+        return thickness;
+    }
+
+    public boolean isPenDown() {
+        return isPenDown;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /* true if publishing the given state would not change anything drawn */
+    boolean matches(TLTurtleState state) {
+        return x == state.getX() && y == state.getY() && heading == state.getHeading()
+                && thickness == state.getThickness() && isPenDown == state.isPenDown()
+                && pathType == state.getPathType()
+                && Objects.equal(color, state.getColor())
+                && Objects.equal(status, state.getStatus());
+    }
+}
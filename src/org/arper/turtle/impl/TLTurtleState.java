@@ -6,68 +6,80 @@ import java.util.List;
 
 import org.arper.turtle.TLPathType;
 
-import com.google.common.collect.Lists;
-
-public class TLTurtleState {
-
-    public TLTurtleState() {
-        location = new Point2D.Float();
-        fillShape = Lists.newArrayList();
-
-        reset();
+/* The simulated state of a single turtle. Implementations either keep the
+ * state in their own fields (TLHeapTurtleState) or in the primitive arrays
+ * of a TLTurtleStateStore.
+ */
+public abstract class TLTurtleState {
+
+    public abstract float getX();                  // pixels
+    public abstract float getY();                  // pixels
+    public abstract void setLocation(float x, float y);
+
+    public abstract float getMovementSpeed();      // pixels per second
+    public abstract void setMovementSpeed(float movementSpeed);
+
+    public abstract float getHeading();            // radians
+    public abstract void setHeading(float heading);
+    public abstract float getTurningSpeed();       // radians per second
+    public abstract void setTurningSpeed(float turningSpeed);
+
+    public abstract Color getColor();              // note: non-null
+    public abstract void setColor(Color color);
+    public abstract TLPathType getPathType();
+    public abstract void setPathType(TLPathType pathType);
+    public abstract float getThickness();          // pixels
+    public abstract void setThickness(float thickness);
+    public abstract boolean isPenDown();
+    public abstract void setPenDown(boolean isPenDown);
+
+    public abstract List<Point2D.Float> getFillShape(); // for use to produce fillShapes
+    public abstract boolean isFilling();
+    public abstract void setFilling(boolean isFilling);
+
+    public abstract String getStatus();
+    public abstract void setStatus(String status);
+    public abstract Object getData();
+    public abstract void setData(Object data);
+
+    public Point2D.Float getLocation() {
+        return new Point2D.Float(getX(), getY());
     }
 
-    public final Point2D.Float location;     // pixels
-    public volatile float movementSpeed;  // pixels per second
-
-    public volatile float heading;         // radians
-    public volatile float turningSpeed;   // radians per second
-
-    public volatile Color color;           // note: non-null
-    public volatile TLPathType pathType;
-    public volatile float thickness;       // pixels
-    public volatile boolean isPenDown;
-
-    public final List<Point2D.Float> fillShape;// for use to produce fillShapes
-    public boolean isFilling;
-
-    public volatile String status;
-    public volatile Object data;
-
     public void reset() {
-        location.setLocation(0, 0);
-        movementSpeed = 200;
+        setLocation(0, 0);
+        setMovementSpeed(200);
 
-        heading = 0;
-        turningSpeed = TLVector.PI_F * 1.5f;
+        setHeading(0);
+        setTurningSpeed(TLVector.PI_F * 1.5f);
 
-        color = Color.BLACK;
-        pathType = TLPathType.Rounded;
-        thickness = 8;
-        isPenDown = true;
+        setColor(Color.BLACK);
+        setPathType(TLPathType.Rounded);
+        setThickness(8);
+        setPenDown(true);
 
-        fillShape.clear();
-        isFilling = false;
+        getFillShape().clear();
+        setFilling(false);
 
-        status = null;
-        data = null;
+        setStatus(null);
+        setData(null);
     }
 
     public void set(TLTurtleState other) {
-        this.location.setLocation(other.location);
-        this.movementSpeed = other.movementSpeed;
-        this.heading = other.heading;
-        this.turningSpeed = other.turningSpeed;
-        this.color = other.color;
-        this.pathType = other.pathType;
-        this.thickness = other.thickness;
-        this.isPenDown = other.isPenDown;
-
-        this.fillShape.clear();
-        this.fillShape.addAll(other.fillShape);
-        this.isFilling = other.isFilling;
-
-        this.status = other.status;
-        this.data = other.data;
+        setLocation(other.getX(), other.getY());
+        setMovementSpeed(other.getMovementSpeed());
+        setHeading(other.getHeading());
+        setTurningSpeed(other.getTurningSpeed());
+        setColor(other.getColor());
+        setPathType(other.getPathType());
+        setThickness(other.getThickness());
+        setPenDown(other.isPenDown());
+
+        getFillShape().clear();
+        getFillShape().addAll(other.getFillShape());
+        setFilling(other.isFilling());
+
+        setStatus(other.getStatus());
+        setData(other.getData());
     }
 }
@@ -0,0 +1,229 @@
+package org.arper.turtle.impl;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.collect.Lists;
+
+/* Structure-of-arrays backend for turtle state. Turtles are assigned integer
+ * slot ids, and each property lives in a primitive array indexed by slot, so
+ * large swarms cost a few dozen bytes per turtle and stepping them walks
+ * contiguous memory. Arrays are allocated in fixed-size pages that never
+ * move, so growing the store never copies (or races with) live state.
+ *
+ * Unlike TLHeapTurtleState, the array elements are not volatile; cross-thread
+ * visibility relies on the simulator's own synchronization.
+ */
+public class TLTurtleStateStore {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final TLPathType[] PATH_TYPES = TLPathType.values();
+
+    public TLTurtleStateStore() {
+        pages = Lists.newArrayList();
+        freeSlots = new ArrayDeque<Integer>();
+    }
+
+    private final List<Page> pages;
+    private final Deque<Integer> freeSlots;
+    private int nextSlot;
+
+    public synchronized TLTurtleState allocate() {
+        int id;
+        if (!freeSlots.isEmpty()) {
+            id = freeSlots.pop();
+        } else {
+            id = nextSlot++;
+            if ((id >>> PAGE_BITS) >= pages.size()) {
+                pages.add(new Page());
+            }
+        }
+
+        Slot slot = new Slot(id, pages.get(id >>> PAGE_BITS), id & (PAGE_SIZE - 1));
+        slot.reset();
+        return slot;
+    }
+
+    public synchronized void release(TLTurtleState state) {
+        Slot slot = (Slot) state;
+        slot.page.color[slot.index] = null;
+        slot.page.fillShape[slot.index] = null;
+        slot.page.status[slot.index] = null;
+        slot.page.data[slot.index] = null;
+        freeSlots.push(slot.id);
+    }
+
+    public synchronized int size() {
+        return nextSlot - freeSlots.size();
+    }
+
+    public static int getSlotId(TLTurtleState state) {
+        return state instanceof Slot? ((Slot) state).id : -1;
+    }
+
+    private static class Page {
+        private final float[] x = new float[PAGE_SIZE];
+        private final float[] y = new float[PAGE_SIZE];
+        private final float[] movementSpeed = new float[PAGE_SIZE];
+        private final float[] heading = new float[PAGE_SIZE];
+        private final float[] turningSpeed = new float[PAGE_SIZE];
+        private final float[] thickness = new float[PAGE_SIZE];
+        private final byte[] pathType = new byte[PAGE_SIZE];
+        private final boolean[] isPenDown = new boolean[PAGE_SIZE];
+        private final boolean[] isFilling = new boolean[PAGE_SIZE];
+
+        /* kept as set, so reads share one Color instead of allocating */
+        private final Color[] color = new Color[PAGE_SIZE];
+
+        /* rarely used, reference-typed properties */
+        private final String[] status = new String[PAGE_SIZE];
+        private final Object[] data = new Object[PAGE_SIZE];
+        private final Object[] fillShape = new Object[PAGE_SIZE];
+    }
+
+    private static class Slot extends TLTurtleState {
+
+        private Slot(int id, Page page, int index) {
+            this.id = id;
+            this.page = page;
+            this.index = index;
+        }
+
+        private final int id;
+        private final Page page;
+        private final int index;
+
+        @Override
+        public float getX() {
+            return page.x[index];
+        }
+
+        @Override
+        public float getY() {
+            return page.y[index];
+        }
+
+        @Override
+        public void setLocation(float x, float y) {
+            page.x[index] = x;
+            page.y[index] = y;
+        }
+
+        @Override
+        public float getMovementSpeed() {
+            return page.movementSpeed[index];
+        }
+
+        @Override
+        public void setMovementSpeed(float movementSpeed) {
+            page.movementSpeed[index] = movementSpeed;
+        }
+
+        @Override
+        public float getHeading() {
+            return page.heading[index];
+        }
+
+        @Override
+        public void setHeading(float heading) {
+            page.heading[index] = heading;
+        }
+
+        @Override
+        public float getTurningSpeed() {
+            return page.turningSpeed[index];
+        }
+
+        @Override
+        public void setTurningSpeed(float turningSpeed) {
+            page.turningSpeed[index] = turningSpeed;
+        }
+
+        @Override
+        public Color getColor() {
+            return page.color[index];
+        }
+
+        @Override
+        public void setColor(Color color) {
+            page.color[index] = color;
+        }
+
+        @Override
+        public TLPathType getPathType() {
+            return PATH_TYPES[page.pathType[index]];
+        }
+
+        @Override
+        public void setPathType(TLPathType pathType) {
+            page.pathType[index] = (byte) pathType.ordinal();
+        }
+
+        @Override
+        public float getThickness() {
+            return page.thickness[index];
+        }
+
+        @Override
+        public void setThickness(float thickness) {
+            page.thickness[index] = thickness;
+        }
+
+        @Override
+        public boolean isPenDown() {
+            return page.isPenDown[index];
+        }
+
+        @Override
+        public void setPenDown(boolean isPenDown) {
+            page.isPenDown[index] = isPenDown;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<Point2D.Float> getFillShape() {
+            Object fillShape = page.fillShape[index];
+            if (fillShape == null) {
+                fillShape = Lists.newArrayList();
+                page.fillShape[index] = fillShape;
+            }
+            return (List<Point2D.Float>) fillShape;
+        }
+
+        @Override
+        public boolean isFilling() {
+            return page.isFilling[index];
+        }
+
+        @Override
+        public void setFilling(boolean isFilling) {
+            page.isFilling[index] = isFilling;
+        }
+
+        @Override
+        public String getStatus() {
+            return page.status[index];
+        }
+
+        @Override
+        public void setStatus(String status) {
+            page.status[index] = status;
+        }
+
+        @Override
+        public Object getData() {
+            return page.data[index];
+        }
+
+        @Override
+        public void setData(Object data) {
+            page.data[index] = data;
+        }
+    }
+}
@@ -12,6 +12,26 @@ public class TLVector {
         return new TLVector((float) Math.cos(radians), (float) Math.sin(radians));
     }
 
+    /* Allocation-free variants of the instance methods below, for use on
+     * the per-step simulation path.
+     */
+
+    public static float lengthSquared(float x, float y) {
+        return x * x + y * y;
+    }
+
+    public static float length(float x, float y) {
+        return (float) Math.sqrt(lengthSquared(x, y));
+    }
+
+    public static float angle(float x, float y) {
+        if (lengthSquared(x, y) < TLSimulator.SIMULATION_EPSILON) {
+            return 0.0f;
+        } else {
+            return (float) Math.atan2(y, x);
+        }
+    }
+
     public TLVector(Point2D.Float p) {
         this.x = p.x;
         this.y = p.y;
@@ -26,11 +46,11 @@ public class TLVector {
     public final float y;
 
     public float lengthSquared() {
-        return x * x + y * y;
+        return lengthSquared(x, y);
     }
 
     public float length() {
-        return (float) Math.sqrt(lengthSquared());
+        return length(x, y);
     }
 
     public TLVector scale(float c) {
@@ -75,10 +95,6 @@ public class TLVector {
     }
 
     public float angle() {
-        if (lengthSquared() < TLSimulator.SIMULATION_EPSILON) {
-            return 0.0f;
-        } else {
-            return (float) Math.atan2(y, x);
-        }
+        return angle(x, y);
     }
 }
\ No newline at end of file
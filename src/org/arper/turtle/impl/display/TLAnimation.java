@@ -2,8 +2,6 @@ package org.arper.turtle.impl.display;
 
 import java.awt.image.BufferedImage;
 
-import org.arper.turtle.TLTurtle;
-
 public interface TLAnimation {
     public abstract BufferedImage[] getImages();
     public abstract int getBoundingWidth();
@@ -15,8 +13,9 @@ public interface TLAnimation {
     public abstract double getCenterY(int piece);
     public abstract double getPieceRotation(int piece, double sec);
 
-    public abstract double getSize(TLTurtle t);
-    public abstract double getCursorSize(TLTurtle t);
+    /* of a turtle whose TLTurtle.getSize() is turtleSize */
+    public abstract double getSize(double turtleSize);
+    public abstract double getCursorSize(double turtleSize);
 
 
     public static final TLAnimation Empty = new TLAnimation() {
@@ -61,12 +60,12 @@ public interface TLAnimation {
         }
 
         @Override
-        public double getSize(TLTurtle t) {
+        public double getSize(double turtleSize) {
             return 0;
         }
 
         @Override
-        public double getCursorSize(TLTurtle t) {
+        public double getCursorSize(double turtleSize) {
             return 0;
         }
     };
@@ -6,72 +6,106 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Transparency;
 import java.awt.geom.Point2D;
-import java.awt.image.BufferedImage;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.JPanel;
 
 import org.arper.turtle.TLUtils;
 import org.arper.turtle.TLTurtle;
+import org.arper.turtle.config.TLApplicationConfig;
 import org.arper.turtle.impl.TLAwtUtilities;
+import org.arper.turtle.impl.TLDefaultTurtleAnimation;
 import org.arper.turtle.impl.TLRenderer;
-import org.arper.turtle.impl.TLSingletonContext;
-import org.arper.turtle.impl.TLLogging;
 import org.arper.turtle.ui.TLCanvas;
 
-import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 
 @SuppressWarnings("serial")
 public class TLJ2DCanvas extends JPanel implements TLCanvas {
 
-	private BufferedImage backBuffer;
 	private final int drawableWidth, drawableHeight;
 	private float zoom;
-	private final LoadingCache<TLTurtle, TLRenderer> renderers;
+	private final List<TLRenderer> renderers;
+	private final TLJ2DDirtyTiles dirtyTiles;
+	private final TLJ2DScene scene;
+	private final TLJ2DTileBuffer backBuffer;
+	private final TLJ2DZoomView zoomView;
+	private final TLJ2DRenderScheduler renderScheduler;
+	private final List<TLJ2DFrameExporter> exporters;
 
 	public TLJ2DCanvas(int width, int height) {
+	    this(width, height, TLApplicationConfig.DEFAULT, true);
+	}
+
+	public TLJ2DCanvas(TLApplicationConfig config) {
+	    this(config.getCanvasWidth(), config.getCanvasHeight(), config, true);
+	}
+
+	/* a canvas that is never shown, drawn only when its owner paints it
+	 * offscreen, so it has no frames of its own
+	 */
+	static TLJ2DCanvas createOffscreen(TLApplicationConfig config) {
+	    return new TLJ2DCanvas(config.getCanvasWidth(), config.getCanvasHeight(), config, false);
+	}
+
+	private TLJ2DCanvas(int width, int height, TLApplicationConfig config, boolean scheduled) {
 	    drawableWidth = width;
 	    drawableHeight = height;
 
 	    /* TODO: module state */
-        this.renderers = CacheBuilder.newBuilder()
-            .concurrencyLevel(4)
-            .weakKeys()
-            .build(new CacheLoader<TLTurtle, TLRenderer>() {
-                @Override
-                public TLRenderer load(TLTurtle key) throws Exception {
-                    return new TLJ2DTurtleRenderer(key);
-                }
-            });
+        this.renderers = Collections.synchronizedList(Lists.<TLRenderer>newArrayList());
+        this.scene = new TLJ2DScene();
+        this.backBuffer = new TLJ2DTileBuffer(scene, width, height, config.getCanvasMaxResidentTiles());
+        this.zoomView = new TLJ2DZoomView(scene, width, height);
+        this.exporters = new CopyOnWriteArrayList<TLJ2DFrameExporter>();
+        TLDefaultTurtleAnimation.prewarm();
+
+        /* Simulator threads only mark tiles; the scheduler turns whatever was
+         * marked into at most one frame per tick of the target frame rate.
+         */
+        this.dirtyTiles = new TLJ2DDirtyTiles(width, height);
+        this.renderScheduler = !scheduled? null : new TLJ2DRenderScheduler(new TLJ2DRenderScheduler.Frame() {
+            @Override
+            public boolean render() {
+                return renderFrame();
+            }
+        }, config.getTargetFramesPerSecond());
+        if (renderScheduler != null) {
+            renderScheduler.start();
+        }
 
 	    clear();
 	}
 
 	@Override
-	public TLRenderer getRenderer(TLTurtle turtle) {
-	    try {
-            return renderers.get(turtle);
-        } catch (ExecutionException e) {
-            throw Throwables.propagate(e);
-        }
+	public TLRenderer createRenderer(TLTurtle turtle) {
+	    TLRenderer renderer = new TLJ2DTurtleRenderer(this);
+	    renderers.add(renderer);
+	    return renderer;
+	}
+
+	@Override
+	public void removeRenderer(TLRenderer renderer) {
+	    renderers.remove(renderer);
+	    repaint();
 	}
 
     @Override
 	public void clear() {
         setLayout(new BorderLayout());
         zoom = 1.0f;
-        createBuffer();
+        scene.clear();
         setDoubleBuffered(true);
+        repaint();
 	}
 
 	@Override
@@ -79,29 +113,17 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
 		return new Dimension(Math.round(drawableWidth * zoom), Math.round(drawableHeight * zoom));
 	}
 
-	private void createBuffer() {
-	    if (backBuffer != null) {
+	public int getDrawableWidth() {
+		return drawableWidth;
+	}
 
-	    }
-		try {
-		    backBuffer = GraphicsEnvironment.getLocalGraphicsEnvironment()
-		            .getDefaultScreenDevice()
-		            .getDefaultConfiguration()
-		            .createCompatibleImage(drawableWidth, drawableHeight, Transparency.TRANSLUCENT);
-		} catch (Exception e) {
-		    TLLogging.error("Unable to create canvas buffer. Did you specify a canvas too large?"
-		            + " [" + drawableWidth + " x " + drawableHeight + "]", e);
-		}
+	public int getDrawableHeight() {
+		return drawableHeight;
 	}
 
-	public Graphics2D getCanvasGraphics() {
-		Graphics2D g = backBuffer != null? backBuffer.createGraphics() : null;
-		if (g != null) {
-			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		}
-		g.translate(drawableWidth / 2, drawableHeight / 2);
-		return g;
+	/* everything committed to the back buffer, as geometry */
+	TLJ2DScene getScene() {
+		return scene;
 	}
 
     @Override
@@ -109,26 +131,47 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
         TLAwtUtilities.assertOnAwtThread();
 
 		super.paintComponent(g);
-        List<TLTurtle> turtles = TLSingletonContext.get().getTurtles();
 
 		Graphics2D g2 = (Graphics2D) g;
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.scale(zoom, zoom);
 
-		if (backBuffer != null) {
-		    Graphics2D canvasGraphics = getCanvasGraphics();
-		    for (TLTurtle turtle : turtles) {
-		        getRenderer(turtle).preRender(canvasGraphics);
+		synchronized (renderers) {
+		    if (zoom == 1) {
+		        Rectangle clip = g.getClipBounds();
+		        backBuffer.draw(g2, clip != null? clip : getVisibleRect(), 1);
+		    } else {
+		        /* drawn at the displayed resolution rather than scaled up */
+		        Rectangle visible = getVisibleRect();
+		        g.drawImage(zoomView.update(backBuffer, zoom, visible), visible.x, visible.y, null);
+		    }
+
+		    g2.scale(zoom, zoom);
+
+		    g2.translate(drawableWidth / 2, drawableHeight / 2);
+		    for (TLRenderer renderer : renderers) {
+		        renderer.render(g2);
 		    }
-			g.drawImage(backBuffer, 0, 0, null);
 		}
+	}
 
-        g2.translate(drawableWidth / 2, drawableHeight / 2);
-        synchronized (turtles) {
-            for (TLTurtle turtle : turtles) {
-                getRenderer(turtle).render(g2);
-            }
-        }
+	/* draws the whole canvas at its own size, as paintComponent() would
+	 * without zoom, for frames that are not shown on screen; g may scale it
+	 */
+	void paintOffscreen(Graphics2D g) {
+		TLAwtUtilities.assertOnAwtThread();
+
+		g.setColor(getBackground());
+		g.fillRect(0, 0, drawableWidth, drawableHeight);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		synchronized (renderers) {
+			backBuffer.draw(g, new Rectangle(0, 0, drawableWidth, drawableHeight), 1);
+
+			g.translate(drawableWidth / 2, drawableHeight / 2);
+			for (TLRenderer renderer : renderers) {
+				renderer.render(g);
+			}
+		}
 	}
 
 	private static Rectangle getRectangleContaining(Point2D p1, Point2D p2) {
@@ -147,8 +190,8 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
 	}
 
 	public void markDirty(Point2D p, int size) {
-		markDirty(new Rectangle((int) Math.floor(p.getX()) - size, (int) Math.floor(p.getY()) - size,
-				2 * size, 2 * size));
+		markDirty((int) Math.floor(p.getX()) - size, (int) Math.floor(p.getY()) - size,
+				2 * size, 2 * size);
 	}
 
 	private static void scaleRectangle(Rectangle r, float scale) {
@@ -157,10 +200,106 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
 	}
 
 	public void markDirty(Rectangle r) {
-//		r.grow(100, 100);
-        r.translate(drawableWidth / 2, drawableHeight / 2);
-		scaleRectangle(r, zoom);
-		repaint(r);
+		markDirty(r.x, r.y, r.width, r.height);
+	}
+
+	/* May be called from any thread. */
+	public void markDirty(int x, int y, int width, int height) {
+		dirtyTiles.mark(x + drawableWidth / 2, y + drawableHeight / 2, width, height);
+	}
+
+	/* Runs once per scheduled frame on the AWT thread. Turtle state is
+	 * snapshotted here, so every paint within the frame sees the same state
+	 * no matter how far the simulation moves on in the meantime. Returns
+	 * whether anything was painted.
+	 */
+	private boolean renderFrame() {
+		Rectangle r = dirtyTiles.collect();
+		if (r != null) {
+			synchronized (renderers) {
+				for (TLRenderer renderer : renderers) {
+					renderer.preRender();
+				}
+			}
+
+			Rectangle2D committed = rasterizeCommitted();
+			if (committed != null) {
+				committed.setRect(committed.getX() + drawableWidth / 2, committed.getY() + drawableHeight / 2,
+						committed.getWidth(), committed.getHeight());
+				r.add(committed.getBounds());
+			}
+
+			scaleRectangle(r, zoom);
+			paintImmediately(r);
+		}
+
+		/* exported frames are due on their own schedule, changed or not */
+		for (TLJ2DFrameExporter exporter : exporters) {
+			exporter.captureIfDue();
+		}
+		return r != null;
+	}
+
+	/* Starts writing frames of the canvas to target, a directory for
+	 * PngSequence or a file for AnimatedGif, until the exporter is finished.
+	 * Frames are drawn with the canvas's own frames, so framesPerSecond is
+	 * effectively capped by the target frame rate. See also
+	 * TLApplication.startFrameExport().
+	 */
+	public TLJ2DFrameExporter startExport(File target, TLJ2DFrameExporter.Format format,
+			double framesPerSecond, double scale) {
+		Preconditions.checkState(renderScheduler != null, "Offscreen canvases have no frames to export.");
+		TLJ2DFrameExporter exporter = new TLJ2DFrameExporter(this, target, format, framesPerSecond, scale);
+		exporters.add(exporter);
+		return exporter;
+	}
+
+	void removeExporter(TLJ2DFrameExporter exporter) {
+		exporters.remove(exporter);
+	}
+
+	/* writes the paths turtles are still drawing, which are only committed
+	 * to the scene once they end, as of the latest published states
+	 */
+	void appendLiveSvg(StringBuilder svg) {
+		TLAwtUtilities.assertOnAwtThread();
+
+		synchronized (renderers) {
+			for (TLRenderer renderer : renderers) {
+				renderer.preRender();
+				((TLJ2DTurtleRenderer) renderer).appendLiveSvg(svg);
+			}
+		}
+	}
+
+	/* Starts writing everything committed to the canvas to an SVG file,
+	 * until the exporter is finished.
+	 */
+	public TLJ2DSvgExporter startSvgExport(File file) {
+		return new TLJ2DSvgExporter(this, file);
+	}
+
+	/* draws whatever was committed to the scene since the last frame into
+	 * the back buffer, returning its bounds in canvas coordinates
+	 */
+	Rectangle2D rasterizeCommitted() {
+		return backBuffer.rasterizeCommitted();
+	}
+
+	@Override
+	public double getAchievedFramesPerSecond() {
+		return renderScheduler != null? renderScheduler.getAchievedFramesPerSecond() : 0;
+	}
+
+	public long getSkippedFrames() {
+		return renderScheduler != null? renderScheduler.getSkippedFrames() : 0;
+	}
+
+	/* stops the canvas's frames; called when its window closes */
+	public void shutdown() {
+		if (renderScheduler != null) {
+			renderScheduler.shutdown();
+		}
 	}
 
     @Override
@@ -170,11 +309,9 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
 
     @Override
 	public void drawString(String text, double x, double y, Color c, int alignment, Font font) {
-		Graphics2D g2 = getCanvasGraphics();
-		g2.setColor(c);
-		g2.setFont(font);
-		TLJ2DUtilities.drawMultilineString(g2, text, x, y, alignment);
-		repaint();
+		/* drawn into the back buffer with the next frame */
+		int id = scene.addText(text, (float) x, (float) y, c, alignment, font);
+		markDirty(scene.getBounds(id).getBounds());
 	}
 
 	public void setZoom(double zoom) {
@@ -184,7 +321,8 @@ public class TLJ2DCanvas extends JPanel implements TLCanvas {
 
 		if (zoom > 0) {
 			this.zoom = fZoom;
-			invalidate();
+			revalidate();
+			repaint();
 		} else {
 			System.err.println("Invalid zoom: " + zoom);
 		}
@@ -0,0 +1,103 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.Rectangle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/* Grid of 64x64 pixel tiles over the drawable area, marked dirty by any
+ * thread without locking (one bit per tile) and collected once per frame by
+ * the painting thread. Only bits that are not yet set are written, so the
+ * common case of many turtles re-marking the same tiles stays read-only.
+ */
+class TLJ2DDirtyTiles {
+
+    private static final int TILE_SHIFT = 6;
+
+    TLJ2DDirtyTiles(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.columns = Math.max(1, (width + (1 << TILE_SHIFT) - 1) >> TILE_SHIFT);
+        this.rows = Math.max(1, (height + (1 << TILE_SHIFT) - 1) >> TILE_SHIFT);
+        this.words = new AtomicIntegerArray((columns * rows + 31) >>> 5);
+        this.dirty = new AtomicBoolean();
+    }
+
+    private final int width, height;
+    private final int columns, rows;
+    private final AtomicIntegerArray words;
+    private final AtomicBoolean dirty;
+
+    /* marks the tiles overlapping the given rectangle, in drawable pixels */
+    void mark(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0 || x >= width || y >= height || x + w <= 0 || y + h <= 0) {
+            return;
+        }
+
+        int firstColumn = Math.max(0, x) >> TILE_SHIFT;
+        int lastColumn = (Math.min(width, x + w) - 1) >> TILE_SHIFT;
+        int firstRow = Math.max(0, y) >> TILE_SHIFT;
+        int lastRow = (Math.min(height, y + h) - 1) >> TILE_SHIFT;
+
+        boolean marked = false;
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                int tile = row * columns + column;
+                int word = tile >>> 5;
+                int bit = 1 << (tile & 31);
+
+                int bits;
+                while (((bits = words.get(word)) & bit) == 0) {
+                    if (words.compareAndSet(word, bits, bits | bit)) {
+                        marked = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        /* the bits are set before the flag, so a collect() that clears the
+         * flag after this point is guaranteed to see them
+         */
+        if (marked && !dirty.get()) {
+            dirty.set(true);
+        }
+    }
+
+    /* Clears all dirty tiles, returning the bounds of the ones that were
+     * dirty (in drawable pixels), or null if there were none.
+     */
+    Rectangle collect() {
+        if (!dirty.getAndSet(false)) {
+            return null;
+        }
+
+        int minColumn = Integer.MAX_VALUE, maxColumn = -1;
+        int minRow = Integer.MAX_VALUE, maxRow = -1;
+        for (int word = 0; word < words.length(); ++word) {
+            if (words.get(word) == 0) {
+                continue;
+            }
+
+            int bits = words.getAndSet(word, 0);
+            while (bits != 0) {
+                int tile = (word << 5) + Integer.numberOfTrailingZeros(bits);
+                int row = tile / columns;
+                int column = tile - row * columns;
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                bits &= bits - 1;
+            }
+        }
+
+        if (maxColumn < 0) {
+            return null;
+        }
+        int x = minColumn << TILE_SHIFT;
+        int y = minRow << TILE_SHIFT;
+        return new Rectangle(x, y,
+                Math.min(width, (maxColumn + 1) << TILE_SHIFT) - x,
+                Math.min(height, (maxRow + 1) << TILE_SHIFT) - y);
+    }
+}
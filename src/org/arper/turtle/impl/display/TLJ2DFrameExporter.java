@@ -0,0 +1,427 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.arper.turtle.config.TLApplicationConfig;
+import org.arper.turtle.impl.TLAwtUtilities;
+import org.arper.turtle.impl.TLJournal;
+import org.arper.turtle.impl.TLJournalReplayer;
+import org.arper.turtle.impl.TLLogging;
+import org.arper.turtle.impl.TLTurtleSnapshot;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+/* Writes what the canvas shows to image files, one frame every fixed
+ * interval, without a window. Frames are drawn offscreen on the AWT thread
+ * as part of the canvas's own frames, so they can be captured no more often
+ * than the canvas's target frame rate; a frame that is late stands in for
+ * every interval it covers.
+ *
+ * Headless applications have no canvas and no real time to speak of, so
+ * their frames are drawn from the simulation's journal instead, in
+ * simulated time: when the exporter is finished, the journal is replayed
+ * onto an offscreen canvas record by record and a frame is drawn at every
+ * interval of it (see TLApplication.startFrameExport()).
+ *
+ * Captured frames go through a bounded queue to encoder threads, so neither
+ * the simulation nor the canvas ever waits for ImageIO. Images are allocated
+ * as the queue needs them, at the output scale. If the encoders fall behind
+ * a live canvas until the queue and its pool of images are full, frames are
+ * dropped and counted instead, and the next frame stands in for them; a
+ * replay waits for them instead. A PNG sequence is encoded by several
+ * threads at once; an animated GIF is a single stream, so it has one.
+ */
+public class TLJ2DFrameExporter {
+
+    public enum Format {
+        PngSequence, AnimatedGif
+    }
+
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long NANOS_IN_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long NANOS_IN_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+    TLJ2DFrameExporter(TLJ2DCanvas canvas, File target, Format format, double framesPerSecond, double scale) {
+        this(canvas, null, null, target, format, framesPerSecond, scale);
+    }
+
+    /* Draws the frames from the journal when finished, on an offscreen
+     * canvas made from config. Turtles are only drawn from the journal's
+     * start, so it should be opened before they start drawing.
+     */
+    public TLJ2DFrameExporter(TLJournal journal, TLApplicationConfig config, File target, Format format,
+                              double framesPerSecond, double scale) {
+        this(null, journal, config, target, format, framesPerSecond, scale);
+    }
+
+    private TLJ2DFrameExporter(TLJ2DCanvas canvas, TLJournal journal, TLApplicationConfig config, File target,
+                               Format format, double framesPerSecond, double scale) {
+        Preconditions.checkArgument(framesPerSecond > 0,
+                "Frame rate must be positive. [given=%s]", framesPerSecond);
+        Preconditions.checkArgument(scale > 0, "Output scale must be positive. [given=%s]", scale);
+        this.canvas = canvas;
+        this.journal = journal;
+        this.config = config;
+        this.target = target;
+        this.format = format;
+        this.frameIntervalNanos = (long) (NANOS_IN_SECOND / framesPerSecond);
+        this.scale = scale;
+        this.queue = new ArrayBlockingQueue<Frame>(QUEUE_CAPACITY);
+        this.writtenFrames = new AtomicLong();
+        this.droppedFrames = new AtomicLong();
+
+        int canvasWidth = canvas != null? canvas.getDrawableWidth() : config.getCanvasWidth();
+        int canvasHeight = canvas != null? canvas.getDrawableHeight() : config.getCanvasHeight();
+        this.imageWidth = Math.max(1, (int) Math.round(canvasWidth * scale));
+        this.imageHeight = Math.max(1, (int) Math.round(canvasHeight * scale));
+
+        int workers = format == Format.AnimatedGif? 1
+                : Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        this.maxImages = QUEUE_CAPACITY + workers;
+        this.images = new ArrayBlockingQueue<BufferedImage>(maxImages);
+
+        if (format == Format.PngSequence) {
+            Preconditions.checkArgument(target.isDirectory() || target.mkdirs(),
+                    "Unable to create frame directory %s.", target);
+        } else {
+            gifWriter = ImageIO.getImageWritersByFormatName("gif").next();
+            try {
+                gifOutput = ImageIO.createImageOutputStream(target);
+                Preconditions.checkArgument(gifOutput != null, "Unable to write to %s.", target);
+                gifWriter.setOutput(gifOutput);
+                gifWriter.prepareWriteSequence(null);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        this.encoders = Lists.newArrayList();
+        for (int i = 0; i < workers; ++i) {
+            Thread encoder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    encode();
+                }
+            }, "TLFrameEncoderThread-" + i);
+            encoder.setDaemon(true);
+            encoder.start();
+            encoders.add(encoder);
+        }
+    }
+
+    private final TLJ2DCanvas canvas;              // null when replaying
+    private final TLJournal journal;               // null when live
+    private final TLApplicationConfig config;      // null when live
+    private final File target;
+    private final Format format;
+    private final long frameIntervalNanos;
+    private final double scale;
+    private final int imageWidth, imageHeight;
+    private final BlockingQueue<Frame> queue;
+    private final int maxImages;
+    private final BlockingQueue<BufferedImage> images;   // free images to draw frames into
+    private final List<Thread> encoders;
+    private final AtomicLong writtenFrames;
+    private final AtomicLong droppedFrames;
+
+    private ImageWriter gifWriter;
+    private ImageOutputStream gifOutput;
+
+    /* only used by the capturing thread: the AWT thread, or the one replaying */
+    private int allocatedImages;
+    private long nextFrameNanos;
+    private boolean started;
+    private long capturedFrames;                   // including repeats
+    private int skippedIntervals;                  // since the last frame
+    private volatile boolean finished;
+
+    public long getWrittenFrames() {
+        return writtenFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /* Stops capturing and waits until every captured frame has been written.
+     * When replaying a journal, this is when the frames are drawn.
+     */
+    public void finish() throws InterruptedException {
+        if (canvas != null) {
+            canvas.removeExporter(this);
+        }
+        finished = true;
+        if (journal != null) {
+            try {
+                replay();
+            } catch (IOException | InvocationTargetException e) {
+                TLLogging.error("Unable to draw frames from the simulation journal.", e);
+            }
+        }
+        for (int i = 0; i < encoders.size(); ++i) {
+            queue.put(Frame.END);
+        }
+        for (Thread encoder : encoders) {
+            encoder.join();
+        }
+
+        if (gifWriter != null) {
+            try {
+                gifWriter.endWriteSequence();
+                gifOutput.close();
+            } catch (IOException e) {
+                TLLogging.error("Unable to finish writing " + target + ".", e);
+            } finally {
+                gifWriter.dispose();
+            }
+        }
+    }
+
+    /* Called by the canvas at the end of each of its frames. */
+    void captureIfDue() {
+        TLAwtUtilities.assertOnAwtThread();
+
+        long now = System.nanoTime();
+        if (finished || (started && now < nextFrameNanos)) {
+            return;
+        }
+
+        int intervals = 1;
+        if (!started) {
+            nextFrameNanos = now;
+            started = true;
+        } else {
+            intervals = (int) ((now - nextFrameNanos) / frameIntervalNanos) + 1;
+        }
+        nextFrameNanos += intervals * frameIntervalNanos;
+
+        /* a frame that has to be dropped is stood in for by the next one, so
+         * the output keeps its timing
+         */
+        BufferedImage image = images.poll();
+        if (image == null && allocatedImages < maxImages) {
+            image = allocateImage();
+        }
+        if (image == null) {
+            skippedIntervals += intervals;
+            droppedFrames.addAndGet(intervals);
+            return;
+        }
+
+        paint(canvas, image);
+
+        if (!queue.offer(new Frame(capturedFrames, skippedIntervals + intervals, image))) {
+            images.add(image);
+            skippedIntervals += intervals;
+            droppedFrames.addAndGet(intervals);
+            return;
+        }
+        capturedFrames += skippedIntervals + intervals;
+        skippedIntervals = 0;
+    }
+
+    /* draws a frame at every interval of the journal's simulated time */
+    private void replay() throws IOException, InterruptedException, InvocationTargetException {
+        journal.flush();
+        final TLJournalReplayer replayer = new TLJournalReplayer(journal.getFile());
+        final List<TLJ2DTurtleRenderer> renderers = Lists.newArrayList();
+        final TLJ2DCanvas[] offscreen = new TLJ2DCanvas[1];
+        TLAwtUtilities.runOnAwtThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                offscreen[0] = TLJ2DCanvas.createOffscreen(config);
+            }
+        });
+
+        long intervalMicros = Math.max(1, frameIntervalNanos / NANOS_IN_MICRO);
+        long startMicros = replayer.getStartMicros(), endMicros = replayer.getEndMicros();
+        for (long index = 0; ; ++index) {
+            final long micros = startMicros + index * intervalMicros;
+            BufferedImage image = images.poll();
+            if (image == null) {
+                image = allocatedImages < maxImages? allocateImage() : images.take();
+            }
+
+            final BufferedImage frame = image;
+            TLAwtUtilities.runOnAwtThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    drawReplayed(replayer, micros, offscreen[0], renderers);
+                    paint(offscreen[0], frame);
+                }
+            });
+            queue.put(new Frame(index, 1, frame));
+
+            if (micros >= endMicros) {
+                return;
+            }
+        }
+    }
+
+    /* Publishes every state each turtle went through up to micros, then
+     * where it is at micros, so paths keep their corners even when the
+     * frames are far apart.
+     */
+    private static void drawReplayed(TLJournalReplayer replayer, long micros, TLJ2DCanvas offscreen,
+                                     List<TLJ2DTurtleRenderer> renderers) {
+        while (replayer.getNextRecordMicros() <= micros) {
+            publishReplayed(replayer, replayer.step(), offscreen, renderers);
+        }
+        replayer.seek(micros);
+        for (int turtle = 0; turtle < replayer.getTurtleCount(); ++turtle) {
+            publishReplayed(replayer, turtle, offscreen, renderers);
+        }
+        offscreen.rasterizeCommitted();
+    }
+
+    private static void publishReplayed(TLJournalReplayer replayer, int turtle, TLJ2DCanvas offscreen,
+                                        List<TLJ2DTurtleRenderer> renderers) {
+        TLTurtleSnapshot snapshot = replayer.getSnapshot(turtle);
+        if (snapshot == null) {
+            return;
+        }
+        while (renderers.size() <= turtle) {
+            renderers.add(null);
+        }
+        TLJ2DTurtleRenderer renderer = renderers.get(turtle);
+        if (renderer == null) {
+            renderer = (TLJ2DTurtleRenderer) offscreen.createRenderer(null);
+            renderers.set(turtle, renderer);
+        }
+        renderer.publish(snapshot);
+        renderer.preRender();
+    }
+
+    private BufferedImage allocateImage() {
+        ++allocatedImages;
+        return new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private void paint(TLJ2DCanvas source, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        if (scale != 1) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.scale(scale, scale);
+        }
+        source.paintOffscreen(g);
+        g.dispose();
+    }
+
+    private void encode() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == Frame.END) {
+                return;
+            }
+
+            try {
+                if (format == Format.PngSequence) {
+                    writePng(frame);
+                } else {
+                    writeGif(frame);
+                }
+                writtenFrames.addAndGet(frame.intervals);
+            } catch (IOException e) {
+                TLLogging.error("Unable to write frame " + frame.index + " to " + target + ".", e);
+            } finally {
+                images.add(frame.image);
+            }
+        }
+    }
+
+    /* a frame is copied for every interval it stands in for, so the
+     * sequence keeps its fixed frame rate
+     */
+    private void writePng(Frame frame) throws IOException {
+        File first = getPngFile(frame.index);
+        ImageIO.write(frame.image, "png", first);
+        for (int i = 1; i < frame.intervals; ++i) {
+            Files.copy(first.toPath(), getPngFile(frame.index + i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File getPngFile(long index) {
+        return new File(target, String.format("frame-%06d.png", index));
+    }
+
+    /* a frame is shown for every interval it stands in for */
+    private void writeGif(Frame frame) throws IOException {
+        ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(frame.image);
+        IIOMetadata metadata = gifWriter.getDefaultImageMetadata(type, null);
+        String name = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(name);
+
+        long delay = Math.max(1, Math.round(frame.intervals * frameIntervalNanos / (NANOS_IN_SECOND / 100.0)));
+        IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Long.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+
+        if (frame.index == 0) {
+            /* loop forever */
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] { 1, 0, 0 });
+            getChild(root, "ApplicationExtensions").appendChild(loop);
+        }
+
+        metadata.setFromTree(name, root);
+        gifWriter.writeToSequence(new IIOImage(frame.image, null, metadata), null);
+    }
+
+    private static IIOMetadataNode getChild(IIOMetadataNode parent, String name) {
+        for (int i = 0; i < parent.getLength(); ++i) {
+            if (parent.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        parent.appendChild(child);
+        return child;
+    }
+
+    private static class Frame {
+
+        static final Frame END = new Frame(-1, 0, null);
+
+        Frame(long index, int intervals, BufferedImage image) {
+            this.index = index;
+            this.intervals = intervals;
+            this.image = image;
+        }
+
+        final long index;
+        final int intervals;          // of the frame rate this frame stands for
+        final BufferedImage image;
+    }
+}
@@ -0,0 +1,107 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/* Direct access to the pixels of a 4-band RGBA raster, read and written as
+ * packed 0xAARRGGBB ints. Supports the packed int layouts of INT_ARGB and
+ * INT_ARGB_PRE images and single-bank interleaved byte layouts such as
+ * 4BYTE_ABGR; samples are passed through as stored, exactly as
+ * Raster.getPixel would return them.
+ */
+final class TLJ2DPackedRaster {
+
+    private static final int[] ARGB_MASKS = { 0xff0000, 0xff00, 0xff, 0xff000000 };
+
+    /* returns null for raster layouts that are not supported */
+    static TLJ2DPackedRaster wrap(Raster raster) {
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        int originX = raster.getSampleModelTranslateX();
+        int originY = raster.getSampleModelTranslateY();
+
+        if (sm instanceof SinglePixelPackedSampleModel && db instanceof DataBufferInt
+                && db.getNumBanks() == 1) {
+            SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) sm;
+            if (!Arrays.equals(packed.getBitMasks(), ARGB_MASKS)) {
+                return null;
+            }
+            return new TLJ2DPackedRaster(((DataBufferInt) db).getData(), null,
+                    db.getOffset() - originY * packed.getScanlineStride() - originX,
+                    packed.getScanlineStride(), 1, null);
+        }
+
+        if (sm instanceof ComponentSampleModel && db instanceof DataBufferByte
+                && db.getNumBanks() == 1 && sm.getNumBands() == 4) {
+            ComponentSampleModel component = (ComponentSampleModel) sm;
+            int pixelStride = component.getPixelStride();
+            int scanlineStride = component.getScanlineStride();
+            for (int size : sm.getSampleSize()) {
+                if (size != 8) {
+                    return null;
+                }
+            }
+            return new TLJ2DPackedRaster(null, ((DataBufferByte) db).getData(),
+                    db.getOffset() - originY * scanlineStride - originX * pixelStride,
+                    scanlineStride, pixelStride, component.getBandOffsets());
+        }
+
+        return null;
+    }
+
+    private TLJ2DPackedRaster(int[] ints, byte[] bytes, int origin,
+                              int scanlineStride, int pixelStride, int[] bandOffsets) {
+        this.ints = ints;
+        this.bytes = bytes;
+        this.origin = origin;
+        this.scanlineStride = scanlineStride;
+        this.pixelStride = pixelStride;
+        if (bandOffsets != null) {
+            redOffset = bandOffsets[0];
+            greenOffset = bandOffsets[1];
+            blueOffset = bandOffsets[2];
+            alphaOffset = bandOffsets[3];
+        } else {
+            redOffset = greenOffset = blueOffset = alphaOffset = 0;
+        }
+    }
+
+    private final int[] ints;
+    private final byte[] bytes;
+    private final int origin;
+    private final int scanlineStride;
+    final int pixelStride;
+    private final int redOffset, greenOffset, blueOffset, alphaOffset;
+
+    /* index of the pixel at (x, y), in raster coordinates */
+    int indexOf(int x, int y) {
+        return origin + y * scanlineStride + x * pixelStride;
+    }
+
+    int get(int index) {
+        if (ints != null) {
+            return ints[index];
+        }
+        return (bytes[index + alphaOffset] & 0xff) << 24
+                | (bytes[index + redOffset] & 0xff) << 16
+                | (bytes[index + greenOffset] & 0xff) << 8
+                | (bytes[index + blueOffset] & 0xff);
+    }
+
+    void set(int index, int argb) {
+        if (ints != null) {
+            ints[index] = argb;
+            return;
+        }
+        bytes[index + alphaOffset] = (byte) (argb >>> 24);
+        bytes[index + redOffset] = (byte) (argb >>> 16);
+        bytes[index + greenOffset] = (byte) (argb >>> 8);
+        bytes[index + blueOffset] = (byte) argb;
+    }
+}
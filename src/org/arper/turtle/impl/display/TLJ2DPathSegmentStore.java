@@ -0,0 +1,182 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+
+/* The path a single turtle is currently drawing with one color and stroke.
+ * Only the in-progress run of at most MAX_LIVE_VERTICES vertices is kept and
+ * drawn live each frame; everything before it has been committed to the
+ * canvas's scene, from which it is rasterized exactly once into the back
+ * buffer. Points that continue the last segment in a straight line replace
+ * its end instead of adding a vertex, so a straight move costs a single
+ * vertex however many frames it spans.
+ *
+ * The path is drawn translucently, so overlapping pieces would show a darker
+ * seam. A run is therefore split in the middle of a segment and both sides of
+ * the split are drawn with butt ends; round caps are only added at the real
+ * ends of the path.
+ */
+class TLJ2DPathSegmentStore {
+
+    private static final AlphaComposite PATH_COMPOSITE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f);
+    private static final int MAX_LIVE_VERTICES = 32;
+    private static final float COLLINEAR_EPSILON = 1e-4f;
+
+    TLJ2DPathSegmentStore(TLJ2DScene scene) {
+        this.scene = scene;
+        xs = new float[MAX_LIVE_VERTICES + 1];
+        ys = new float[MAX_LIVE_VERTICES + 1];
+    }
+
+    private final TLJ2DScene scene;
+    private final float[] xs, ys;
+    private int count;
+    private boolean startCapped;
+    private Color color;
+    private BasicStroke stroke;
+    private BasicStroke splitStroke;
+
+    boolean isActive() {
+        return count > 0;
+    }
+
+    void begin(float x, float y, Color color, BasicStroke stroke) {
+        this.color = color;
+        this.stroke = stroke;
+        this.splitStroke = new BasicStroke(stroke.getLineWidth(), BasicStroke.CAP_BUTT,
+                stroke.getLineJoin(), stroke.getMiterLimit());
+        xs[0] = x;
+        ys[0] = y;
+        count = 1;
+        startCapped = true;
+    }
+
+    /* extends the run to (x, y), committing its older part if the run has
+     * grown too long
+     */
+    void lineTo(float x, float y) {
+        float lastX = xs[count - 1], lastY = ys[count - 1];
+        if (x == lastX && y == lastY) {
+            return;
+        }
+
+        if (count >= 2 && continuesLastSegment(x, y)) {
+            xs[count - 1] = x;
+            ys[count - 1] = y;
+            return;
+        }
+
+        xs[count] = x;
+        ys[count] = y;
+        ++count;
+
+        if (count > MAX_LIVE_VERTICES) {
+            split();
+        }
+    }
+
+    /* commits the whole run, ending it with the stroke's own cap */
+    void finish() {
+        if (count > 1) {
+            commit(true);
+        }
+        count = 0;
+    }
+
+    /* writes the in-progress run as SVG, as the scene would once the run
+     * was finished
+     */
+    void appendLiveSvg(StringBuilder svg) {
+        if (count < 2) {
+            return;
+        }
+        float[] points = new float[2 * count];
+        for (int i = 0; i < count; ++i) {
+            points[2 * i] = xs[i];
+            points[2 * i + 1] = ys[i];
+        }
+        TLJ2DScene.appendSvgStroke(points, 0, count, color.getRGB(), stroke.getLineWidth(),
+                stroke.getEndCap() == BasicStroke.CAP_BUTT, startCapped, true, svg);
+    }
+
+    void drawLive(Graphics2D g) {
+        if (count < 2) {
+            return;
+        }
+
+        /* Combining the outline into one shape, as the scene does, is too
+         * slow to do every frame. Instead a split run is drawn with butt
+         * ends and the round end cap added as a half disc that only touches
+         * the stroke along the butt end.
+         */
+        boolean split = !startCapped && stroke.getEndCap() != BasicStroke.CAP_BUTT;
+        Composite oldComposite = g.getComposite();
+        Stroke oldStroke = g.getStroke();
+        g.setComposite(PATH_COMPOSITE);
+        g.setColor(color);
+        g.setStroke(split? splitStroke : stroke);
+        g.draw(createPath());
+        if (split) {
+            g.fill(endCap());
+        }
+        g.setStroke(oldStroke);
+        g.setComposite(oldComposite);
+    }
+
+    private boolean continuesLastSegment(float x, float y) {
+        float ax = xs[count - 1] - xs[count - 2], ay = ys[count - 1] - ys[count - 2];
+        float bx = x - xs[count - 1], by = y - ys[count - 1];
+        float cross = ax * by - ay * bx;
+        float dot = ax * bx + ay * by;
+        return dot > 0 && cross * cross
+                <= COLLINEAR_EPSILON * COLLINEAR_EPSILON * (ax * ax + ay * ay) * (bx * bx + by * by);
+    }
+
+    /* commits everything up to the middle of the last segment, which becomes
+     * the start of the remaining run
+     */
+    private void split() {
+        float endX = xs[count - 1], endY = ys[count - 1];
+        float midX = (xs[count - 2] + endX) / 2, midY = (ys[count - 2] + endY) / 2;
+
+        xs[count - 1] = midX;
+        ys[count - 1] = midY;
+        commit(false);
+
+        xs[0] = midX;
+        ys[0] = midY;
+        xs[1] = endX;
+        ys[1] = endY;
+        count = 2;
+        startCapped = false;
+    }
+
+    private Path2D.Float createPath() {
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, count);
+        path.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < count; ++i) {
+            path.lineTo(xs[i], ys[i]);
+        }
+        return path;
+    }
+
+    private void commit(boolean capEnd) {
+        scene.addStroke(xs, ys, count, color, stroke, startCapped, capEnd);
+    }
+
+    /* the half of the end cap that lies beyond the end of the path */
+    private Shape endCap() {
+        float x = xs[count - 1], y = ys[count - 1];
+        float radius = stroke.getLineWidth() / 2;
+        double direction = Math.toDegrees(Math.atan2(ys[count - 2] - y, x - xs[count - 2]));
+        return new Arc2D.Float(x - radius, y - radius, 2 * radius, 2 * radius,
+                (float) direction - 90, 180, Arc2D.CHORD);
+    }
+}
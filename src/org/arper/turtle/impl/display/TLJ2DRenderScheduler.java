@@ -0,0 +1,127 @@
+package org.arper.turtle.impl.display;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.arper.turtle.impl.TLLogging;
+
+/* Runs a frame on the AWT thread at a fixed target rate, independently of
+ * how often the simulation marks things dirty. A frame that comes due while
+ * the previous one is still queued or running is skipped rather than queued,
+ * so a slow UI drops frames instead of falling behind. Only frames that
+ * painted something count towards the rendered frames and achieved rate.
+ */
+class TLJ2DRenderScheduler {
+
+    private static final long NANOS_IN_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    interface Frame {
+        /* returns whether anything was painted */
+        boolean render();
+    }
+
+    TLJ2DRenderScheduler(Frame frame, int targetFramesPerSecond) {
+        this.frame = frame;
+        this.targetFramesPerSecond = Math.max(1, targetFramesPerSecond);
+        this.framePending = new AtomicBoolean();
+        this.renderedFrames = new AtomicLong();
+        this.skippedFrames = new AtomicLong();
+        this.windowStartNanos = System.nanoTime();
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TLRenderSchedulerThread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private final Frame frame;
+    private final int targetFramesPerSecond;
+    private final ScheduledExecutorService timer;
+    private final AtomicBoolean framePending;
+    private final AtomicLong renderedFrames;
+    private final AtomicLong skippedFrames;
+
+    /* achieved frame rate, measured over windows of about a second */
+    private long windowStartNanos;
+    private int windowFrames;
+    private volatile float achievedFramesPerSecond;
+
+    void start() {
+        timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 0, NANOS_IN_SECOND / targetFramesPerSecond, TimeUnit.NANOSECONDS);
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    int getTargetFramesPerSecond() {
+        return targetFramesPerSecond;
+    }
+
+    float getAchievedFramesPerSecond() {
+        return achievedFramesPerSecond;
+    }
+
+    long getRenderedFrames() {
+        return renderedFrames.get();
+    }
+
+    long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    private void tick() {
+        if (!framePending.compareAndSet(false, true)) {
+            skippedFrames.incrementAndGet();
+            return;
+        }
+        SwingUtilities.invokeLater(frameRunnable);
+    }
+
+    private final Runnable frameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean painted = false;
+            try {
+                painted = frame.render();
+            } catch (RuntimeException e) {
+                TLLogging.error("Unable to render frame.", e);
+            } finally {
+                if (painted) {
+                    renderedFrames.incrementAndGet();
+                }
+                countFrame(painted);
+                framePending.set(false);
+            }
+        }
+    };
+
+    /* only called on the AWT thread */
+    private void countFrame(boolean painted) {
+        if (painted) {
+            ++windowFrames;
+        }
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        if (elapsed >= NANOS_IN_SECOND) {
+            achievedFramesPerSecond = windowFrames * (float) NANOS_IN_SECOND / elapsed;
+            windowFrames = 0;
+            windowStartNanos = now;
+        }
+    }
+}
@@ -0,0 +1,598 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.arper.turtle.TLPathType;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+
+/* Everything that has been committed to the canvas, kept as geometry in
+ * canvas coordinates so it can be drawn again at any scale, hit tested or
+ * exported. Items are strokes (a polyline with a color and stroke), fills
+ * (a closed polygon) and text, identified by their index in drawing order.
+ * Geometry lives in growable primitive arrays; only the strings and fonts
+ * of text items are objects. appendSvg() writes an item the way draw()
+ * draws it, for TLJ2DSvgExporter.
+ *
+ * Items are indexed by a grid of 256 pixel cells keyed by cell coordinates,
+ * so the scene is not limited to the drawable area. Items whose bounds span
+ * too many cells are kept in a separate list that every query checks.
+ *
+ * The scene is the only complete copy of the drawing, so it is not bounded:
+ * it grows with everything drawn until the canvas is cleared.
+ */
+class TLJ2DScene {
+
+    static final byte STROKE = 0, FILL = 1, TEXT = 2;
+
+    private static final AlphaComposite PATH_COMPOSITE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f);
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+
+    private static final int CELL_SHIFT = 8;
+    private static final int MAX_CELLS_PER_ITEM = 64;
+
+    /* style bits */
+    private static final int SHARP = 1, CAP_START = 2, CAP_END = 4, ALIGNMENT_SHIFT = 3;
+
+    TLJ2DScene() {
+        clear();
+    }
+
+    private int size;
+    private byte[] kinds;
+    private int[] colors;
+    private float[] widths;
+    private int[] styles;
+    private int[] firstPoints;
+    private int[] pointCounts;
+    private float[] bounds;       // minX, minY, maxX, maxY per item
+    private String[] texts;
+    private Font[] fonts;
+
+    private int pointCount;
+    private float[] points;       // x, y pairs
+
+    private Map<Long, Cell> cells;
+    private Cell oversized;
+    private int[] queryStamps;
+    private int queryStamp;
+    private int generation;
+
+    synchronized void clear() {
+        size = 0;
+        kinds = new byte[64];
+        colors = new int[64];
+        widths = new float[64];
+        styles = new int[64];
+        firstPoints = new int[64];
+        pointCounts = new int[64];
+        bounds = new float[4 * 64];
+        texts = new String[64];
+        fonts = new Font[64];
+        pointCount = 0;
+        points = new float[2 * 1024];
+        cells = Maps.newHashMap();
+        oversized = new Cell();
+        queryStamps = new int[64];
+        queryStamp = 0;
+        ++generation;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /* changes whenever the scene is cleared, so ids are only comparable
+     * within one generation
+     */
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /* a polyline drawn with the given stroke; uncapped ends are drawn butt
+     * ended, where the path was split into more than one item
+     */
+    synchronized int addStroke(float[] xs, float[] ys, int count, Color color, BasicStroke stroke,
+                               boolean capStart, boolean capEnd) {
+        int style = (stroke.getEndCap() == BasicStroke.CAP_BUTT? SHARP : 0)
+                | (capStart? CAP_START : 0) | (capEnd? CAP_END : 0);
+        int id = addItem(STROKE, color, stroke.getLineWidth(), style);
+        addPoints(id, xs, ys, count);
+        return index(id, stroke.getLineWidth() / 2);
+    }
+
+    synchronized int addFill(float[] xs, float[] ys, int count, Color color) {
+        int id = addItem(FILL, color, 0, 0);
+        addPoints(id, xs, ys, count);
+        return index(id, 0);
+    }
+
+    synchronized int addText(String text, float x, float y, Color color, int alignment, Font font) {
+        int id = addItem(TEXT, color, 0, alignment << ALIGNMENT_SHIFT);
+        texts[id] = text;
+        fonts[id] = font;
+
+        Rectangle2D textBounds = TLJ2DUtilities.getMultilineTextBounds(text, font, FONT_RENDER_CONTEXT);
+        float width = (float) textBounds.getWidth();
+        float left = alignment == TLJ2DUtilities.CENTER? x - width / 2
+                : alignment == TLJ2DUtilities.RIGHT? x - width : x;
+        float ascent = font.getLineMetrics(text, FONT_RENDER_CONTEXT).getAscent();
+
+        firstPoints[id] = pointCount;
+        pointCounts[id] = 0;
+        bounds[4 * id] = left;
+        bounds[4 * id + 1] = y - ascent;
+        bounds[4 * id + 2] = left + width;
+        bounds[4 * id + 3] = y - ascent + (float) textBounds.getHeight();
+        ensurePoints(1);
+        points[2 * pointCount] = x;
+        points[2 * pointCount + 1] = y;
+        pointCounts[id] = 1;
+        ++pointCount;
+        return index(id, 0);
+    }
+
+    synchronized byte getKind(int id) {
+        return kinds[id];
+    }
+
+    synchronized Rectangle2D getBounds(int id) {
+        return new Rectangle2D.Float(bounds[4 * id], bounds[4 * id + 1],
+                bounds[4 * id + 2] - bounds[4 * id], bounds[4 * id + 3] - bounds[4 * id + 1]);
+    }
+
+    /* ids of all items whose bounds intersect the area, in drawing order */
+    synchronized int[] query(Rectangle2D area) {
+        float minX = (float) area.getMinX(), minY = (float) area.getMinY();
+        float maxX = (float) area.getMaxX(), maxY = (float) area.getMaxY();
+
+        if (++queryStamp == 0) {
+            Arrays.fill(queryStamps, 0);
+            queryStamp = 1;
+        }
+
+        Cell results = new Cell();
+        collect(oversized, minX, minY, maxX, maxY, results);
+
+        int firstColumn = cellOf(minX), lastColumn = cellOf(maxX);
+        int firstRow = cellOf(minY), lastRow = cellOf(maxY);
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > cells.size()) {
+            /* cheaper to look at every cell than every empty one in the area */
+            for (Cell cell : cells.values()) {
+                collect(cell, minX, minY, maxX, maxY, results);
+            }
+        } else {
+            for (int row = firstRow; row <= lastRow; ++row) {
+                for (int column = firstColumn; column <= lastColumn; ++column) {
+                    Cell cell = cells.get(key(column, row));
+                    if (cell != null) {
+                        collect(cell, minX, minY, maxX, maxY, results);
+                    }
+                }
+            }
+        }
+
+        int[] ids = Arrays.copyOf(results.items, results.size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /* the topmost item within tolerance of the point, or -1 */
+    synchronized int hitTest(float x, float y, float tolerance) {
+        int[] ids = query(new Rectangle2D.Float(x - tolerance, y - tolerance, 2 * tolerance, 2 * tolerance));
+        for (int i = ids.length - 1; i >= 0; --i) {
+            if (hits(ids[i], x, y, tolerance)) {
+                return ids[i];
+            }
+        }
+        return -1;
+    }
+
+    /* draws every item that intersects the area, in drawing order */
+    synchronized void draw(Graphics2D g, Rectangle2D area) {
+        for (int id : query(area)) {
+            draw(g, id);
+        }
+    }
+
+    synchronized void draw(Graphics2D g, int id) {
+        Color color = new Color(colors[id], true);
+        switch (kinds[id]) {
+        case STROKE:
+            drawStroke(g, id, color);
+            break;
+        case FILL:
+            Composite oldComposite = g.getComposite();
+            g.setComposite(PATH_COMPOSITE);
+            g.setColor(color);
+            g.fill(createPath(id, true));
+            g.setComposite(oldComposite);
+            break;
+        case TEXT:
+            g.setColor(color);
+            g.setFont(fonts[id]);
+            TLJ2DUtilities.drawMultilineString(g, texts[id], points[2 * firstPoints[id]],
+                    points[2 * firstPoints[id] + 1], styles[id] >>> ALIGNMENT_SHIFT);
+            break;
+        default:
+            throw new IllegalStateException("Unknown scene item kind: " + kinds[id]);
+        }
+    }
+
+    private void drawStroke(Graphics2D g, int id, Color color) {
+        Path2D.Float path = createPath(id, false);
+        int style = styles[id];
+        boolean sharp = (style & SHARP) != 0;
+        boolean capStart = (style & CAP_START) != 0, capEnd = (style & CAP_END) != 0;
+
+        Composite oldComposite = g.getComposite();
+        Stroke oldStroke = g.getStroke();
+        g.setComposite(PATH_COMPOSITE);
+        g.setColor(color);
+
+        if (sharp || (capStart && capEnd)) {
+            g.setStroke(createStroke(widths[id], sharp? TLPathType.Sharp : TLPathType.Rounded));
+            g.draw(path);
+        } else {
+            /* one shape, so the caps do not overlap the stroke they end */
+            BasicStroke butt = new BasicStroke(widths[id], BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+            Area outline = new Area(butt.createStrokedShape(path));
+            int first = firstPoints[id], last = first + pointCounts[id] - 1;
+            if (capStart) {
+                outline.add(new Area(cap(points[2 * first], points[2 * first + 1], widths[id])));
+            }
+            if (capEnd) {
+                outline.add(new Area(cap(points[2 * last], points[2 * last + 1], widths[id])));
+            }
+            g.fill(outline);
+        }
+
+        g.setStroke(oldStroke);
+        g.setComposite(oldComposite);
+    }
+
+    /* writes the item as SVG, matching draw() */
+    synchronized void appendSvg(int id, StringBuilder svg) {
+        int color = colors[id];
+        int first = firstPoints[id], count = pointCounts[id];
+        switch (kinds[id]) {
+        case STROKE:
+            int style = styles[id];
+            appendSvgStroke(points, first, count, color, widths[id], (style & SHARP) != 0,
+                    (style & CAP_START) != 0, (style & CAP_END) != 0, svg);
+            break;
+        case FILL:
+            svg.append("<polygon fill=\"");
+            appendSvgColor(color, svg);
+            svg.append("\" fill-opacity=\"");
+            appendSvgNumber(PATH_COMPOSITE.getAlpha() * (color >>> 24) / 255f, svg);
+            svg.append('"');
+            appendSvgPoints(points, first, count, svg);
+            svg.append("/>\n");
+            break;
+        case TEXT:
+            Font font = fonts[id];
+            int alignment = styles[id] >>> ALIGNMENT_SHIFT;
+            svg.append("<text fill=\"");
+            appendSvgColor(color, svg);
+            svg.append("\" fill-opacity=\"");
+            appendSvgNumber((color >>> 24) / 255f, svg);
+            svg.append("\" font-family=\"");
+            appendSvgText(font.getFamily(), svg);
+            svg.append("\" font-size=\"");
+            appendSvgNumber(font.getSize2D(), svg);
+            svg.append(font.isBold()? "\" font-weight=\"bold" : "");
+            svg.append(font.isItalic()? "\" font-style=\"italic" : "");
+            svg.append(alignment == TLJ2DUtilities.CENTER? "\" text-anchor=\"middle"
+                    : alignment == TLJ2DUtilities.RIGHT? "\" text-anchor=\"end" : "");
+            svg.append("\" xml:space=\"preserve\">");
+            float lineHeight = font.getLineMetrics(texts[id], FONT_RENDER_CONTEXT).getHeight();
+            int line = 0;
+            for (String text : Splitter.on('\n').split(texts[id])) {
+                svg.append("<tspan x=\"");
+                appendSvgNumber(points[2 * first], svg);
+                svg.append("\" y=\"");
+                appendSvgNumber(points[2 * first + 1] + line++ * lineHeight, svg);
+                svg.append("\">");
+                appendSvgText(text, svg);
+                svg.append("</tspan>");
+            }
+            svg.append("</text>\n");
+            break;
+        default:
+            throw new IllegalStateException("Unknown scene item kind: " + kinds[id]);
+        }
+    }
+
+    /* writes a polyline of x, y pairs drawn as drawStroke() draws it */
+    static void appendSvgStroke(float[] points, int first, int count, int color, float width,
+                                boolean sharp, boolean capStart, boolean capEnd, StringBuilder svg) {
+        float alpha = PATH_COMPOSITE.getAlpha() * (color >>> 24) / 255f;
+        if (sharp || (capStart && capEnd)) {
+            svg.append("<polyline fill=\"none\" stroke=\"");
+            appendSvgColor(color, svg);
+            svg.append("\" stroke-opacity=\"");
+            appendSvgNumber(alpha, svg);
+            svg.append(sharp? "\" stroke-linecap=\"butt\" stroke-linejoin=\"bevel\""
+                    : "\" stroke-linecap=\"round\" stroke-linejoin=\"round\"");
+            appendSvgStrokeWidth(width, svg);
+            appendSvgPoints(points, first, count, svg);
+            svg.append("/>\n");
+        } else {
+            /* one group, so the caps do not overlap the stroke they end */
+            svg.append("<g opacity=\"");
+            appendSvgNumber(alpha, svg);
+            svg.append("\" fill=\"");
+            appendSvgColor(color, svg);
+            svg.append("\"><polyline fill=\"none\" stroke=\"");
+            appendSvgColor(color, svg);
+            svg.append("\" stroke-linecap=\"butt\" stroke-linejoin=\"round\"");
+            appendSvgStrokeWidth(width, svg);
+            appendSvgPoints(points, first, count, svg);
+            svg.append("/>");
+            if (capStart) {
+                appendSvgCap(points, first, width, svg);
+            }
+            if (capEnd) {
+                appendSvgCap(points, first + count - 1, width, svg);
+            }
+            svg.append("</g>\n");
+        }
+    }
+
+    private static void appendSvgStrokeWidth(float width, StringBuilder svg) {
+        svg.append(" stroke-width=\"");
+        appendSvgNumber(width, svg);
+        svg.append('"');
+    }
+
+    private static void appendSvgPoints(float[] points, int first, int count, StringBuilder svg) {
+        svg.append(" points=\"");
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                svg.append(' ');
+            }
+            appendSvgNumber(points[2 * (first + i)], svg);
+            svg.append(',');
+            appendSvgNumber(points[2 * (first + i) + 1], svg);
+        }
+        svg.append('"');
+    }
+
+    private static void appendSvgCap(float[] points, int point, float width, StringBuilder svg) {
+        svg.append("<circle cx=\"");
+        appendSvgNumber(points[2 * point], svg);
+        svg.append("\" cy=\"");
+        appendSvgNumber(points[2 * point + 1], svg);
+        svg.append("\" r=\"");
+        appendSvgNumber(width / 2, svg);
+        svg.append("\"/>");
+    }
+
+    static void appendSvgColor(int argb, StringBuilder svg) {
+        svg.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            svg.append(Character.forDigit((argb >> shift) & 0xf, 16));
+        }
+    }
+
+    /* to a hundredth of a pixel, which is more than the canvas can show */
+    static void appendSvgNumber(float value, StringBuilder svg) {
+        long hundredths = Math.round(value * 100.0);
+        if (hundredths < 0) {
+            svg.append('-');
+            hundredths = -hundredths;
+        }
+        svg.append(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        if (fraction != 0) {
+            svg.append('.').append(fraction / 10);
+            if (fraction % 10 != 0) {
+                svg.append(fraction % 10);
+            }
+        }
+    }
+
+    static void appendSvgText(String text, StringBuilder svg) {
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                svg.append("&amp;");
+                break;
+            case '<':
+                svg.append("&lt;");
+                break;
+            case '>':
+                svg.append("&gt;");
+                break;
+            case '"':
+                svg.append("&quot;");
+                break;
+            case '\t':
+            case '\n':
+            case '\r':
+                svg.append(c);
+                break;
+            default:
+                /* other control characters cannot appear in XML 1.0 at all */
+                if (c >= 0x20 && c != 0xfffe && c != 0xffff) {
+                    svg.append(c);
+                }
+            }
+        }
+    }
+
+    static BasicStroke createStroke(float width, TLPathType pathType) {
+        if (pathType == TLPathType.Sharp) {
+            return new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+        }
+        return new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    }
+
+    private static Shape cap(float x, float y, float width) {
+        float radius = width / 2;
+        return new Ellipse2D.Float(x - radius, y - radius, width, width);
+    }
+
+    private Path2D.Float createPath(int id, boolean closed) {
+        int first = firstPoints[id], count = pointCounts[id];
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, count + 1);
+        path.moveTo(points[2 * first], points[2 * first + 1]);
+        for (int i = 1; i < count; ++i) {
+            path.lineTo(points[2 * (first + i)], points[2 * (first + i) + 1]);
+        }
+        if (closed) {
+            path.closePath();
+        }
+        return path;
+    }
+
+    private boolean hits(int id, float x, float y, float tolerance) {
+        switch (kinds[id]) {
+        case STROKE:
+            float reach = widths[id] / 2 + tolerance;
+            int first = firstPoints[id], count = pointCounts[id];
+            for (int i = 0; i < Math.max(1, count - 1); ++i) {
+                int a = first + i, b = first + Math.min(i + 1, count - 1);
+                if (Line2D.ptSegDistSq(points[2 * a], points[2 * a + 1],
+                        points[2 * b], points[2 * b + 1], x, y) <= reach * reach) {
+                    return true;
+                }
+            }
+            return false;
+        case FILL:
+            return createPath(id, true).contains(x, y);
+        default:
+            return true; // within the text's bounds
+        }
+    }
+
+    private int addItem(byte kind, Color color, float width, int style) {
+        if (size == kinds.length) {
+            int capacity = 2 * size;
+            kinds = Arrays.copyOf(kinds, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+            firstPoints = Arrays.copyOf(firstPoints, capacity);
+            pointCounts = Arrays.copyOf(pointCounts, capacity);
+            bounds = Arrays.copyOf(bounds, 4 * capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            fonts = Arrays.copyOf(fonts, capacity);
+            queryStamps = Arrays.copyOf(queryStamps, capacity);
+        }
+        int id = size++;
+        kinds[id] = kind;
+        colors[id] = color.getRGB();
+        widths[id] = width;
+        styles[id] = style;
+        return id;
+    }
+
+    private void ensurePoints(int count) {
+        if (2 * (pointCount + count) > points.length) {
+            points = Arrays.copyOf(points, Math.max(2 * points.length, 2 * (pointCount + count)));
+        }
+    }
+
+    private void addPoints(int id, float[] xs, float[] ys, int count) {
+        ensurePoints(count);
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; ++i) {
+            points[2 * (pointCount + i)] = xs[i];
+            points[2 * (pointCount + i) + 1] = ys[i];
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        firstPoints[id] = pointCount;
+        pointCounts[id] = count;
+        pointCount += count;
+
+        bounds[4 * id] = minX;
+        bounds[4 * id + 1] = minY;
+        bounds[4 * id + 2] = maxX;
+        bounds[4 * id + 3] = maxY;
+    }
+
+    /* grows the item's bounds by margin and adds it to the grid */
+    private int index(int id, float margin) {
+        bounds[4 * id] -= margin;
+        bounds[4 * id + 1] -= margin;
+        bounds[4 * id + 2] += margin;
+        bounds[4 * id + 3] += margin;
+
+        int firstColumn = cellOf(bounds[4 * id]), lastColumn = cellOf(bounds[4 * id + 2]);
+        int firstRow = cellOf(bounds[4 * id + 1]), lastRow = cellOf(bounds[4 * id + 3]);
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > MAX_CELLS_PER_ITEM) {
+            oversized.add(id);
+            return id;
+        }
+
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                Long key = key(column, row);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    cell = new Cell();
+                    cells.put(key, cell);
+                }
+                cell.add(id);
+            }
+        }
+        return id;
+    }
+
+    private void collect(Cell cell, float minX, float minY, float maxX, float maxY, Cell results) {
+        for (int i = 0; i < cell.size; ++i) {
+            int id = cell.items[i];
+            if (queryStamps[id] == queryStamp) {
+                continue;
+            }
+            queryStamps[id] = queryStamp;
+            if (bounds[4 * id] <= maxX && bounds[4 * id + 2] >= minX
+                    && bounds[4 * id + 1] <= maxY && bounds[4 * id + 3] >= minY) {
+                results.add(id);
+            }
+        }
+    }
+
+    private static int cellOf(float coordinate) {
+        return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static Long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private static final class Cell {
+        int[] items = new int[8];
+        int size;
+
+        void add(int id) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.arper.turtle.impl.TLAwtUtilities;
+import org.arper.turtle.impl.TLLogging;
+
+import com.google.common.base.Throwables;
+
+/* Writes everything committed to the canvas to an SVG file as geometry, so
+ * the file grows with what is drawn rather than with the canvas's area.
+ * Items are appended in drawing order as they are committed to the scene,
+ * in batches every WRITE_INTERVAL_MILLIS on a thread of its own, so turtles
+ * never wait for the file. Clearing the canvas paints the background over
+ * everything written before it.
+ *
+ * A turtle's path only reaches the scene once it ends or grows long, so the
+ * paths still being drawn are written when the exporter is finished, which
+ * is also when the file becomes a complete document.
+ */
+public class TLJ2DSvgExporter {
+
+    private static final long WRITE_INTERVAL_MILLIS = 100;
+
+    TLJ2DSvgExporter(TLJ2DCanvas canvas, File file) {
+        this.canvas = canvas;
+        this.scene = canvas.getScene();
+        this.file = file;
+        this.background = canvas.getBackground();
+        this.batch = new StringBuilder();
+
+        int width = canvas.getDrawableWidth(), height = canvas.getDrawableHeight();
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                    + "\" viewBox=\"" + (-width / 2) + " " + (-height / 2) + " " + width + " " + height + "\">\n");
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+
+        synchronized (scene) {
+            generation = scene.getGeneration();
+            appendBackground();
+        }
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TLSvgExportThread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        writer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                writeCommitted();
+            }
+        }, 0, WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final TLJ2DCanvas canvas;
+    private final TLJ2DScene scene;
+    private final File file;
+    private final Color background;
+    private final StringBuilder batch;
+    private final ScheduledExecutorService writer;
+
+    /* guarded by this */
+    private Writer out;
+    private int generation;
+    private int writtenItems;            // of the scene's current generation
+    private long totalItems;
+    private boolean failed;
+
+    public synchronized long getWrittenItems() {
+        return totalItems;
+    }
+
+    /* Writes whatever is left, including the paths turtles are still in
+     * the middle of, and closes the document.
+     */
+    public void finish() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        /* Bringing the renderers up to date may commit paths that have just
+         * ended, so the committed items are only written after that.
+         */
+        final StringBuilder live = new StringBuilder();
+        try {
+            TLAwtUtilities.runOnAwtThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    canvas.appendLiveSvg(live);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            TLLogging.error("Unable to export the paths still being drawn to " + file + ".", e.getCause());
+        }
+        writeCommitted();
+
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.append(live);
+                out.write("</svg>\n");
+                out.close();
+            } catch (IOException e) {
+                TLLogging.error("Unable to finish writing " + file + ".", e);
+            }
+        }
+    }
+
+    private synchronized void writeCommitted() {
+        if (failed) {
+            return;
+        }
+
+        /* copied out under the scene's lock, written outside of it */
+        synchronized (scene) {
+            if (scene.getGeneration() != generation) {
+                generation = scene.getGeneration();
+                writtenItems = 0;
+                appendBackground();
+            }
+            int size = scene.size();
+            for (int id = writtenItems; id < size; ++id) {
+                scene.appendSvg(id, batch);
+            }
+            totalItems += size - writtenItems;
+            writtenItems = size;
+        }
+
+        if (batch.length() == 0) {
+            return;
+        }
+        try {
+            out.append(batch);
+            out.flush();
+        } catch (IOException e) {
+            TLLogging.error("Unable to write " + file + "; no more will be exported.", e);
+            failed = true;
+        } finally {
+            batch.setLength(0);
+        }
+    }
+
+    private void appendBackground() {
+        int width = canvas.getDrawableWidth(), height = canvas.getDrawableHeight();
+        batch.append("<rect x=\"").append(-width / 2).append("\" y=\"").append(-height / 2)
+                .append("\" width=\"").append(width).append("\" height=\"").append(height)
+                .append("\" fill=\"");
+        TLJ2DScene.appendSvgColor(background.getRGB(), batch);
+        batch.append("\"/>\n");
+    }
+}
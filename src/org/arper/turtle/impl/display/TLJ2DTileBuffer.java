@@ -0,0 +1,281 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/* The rasterized canvas, split into TILE_SIZE tiles that are only allocated
+ * once something is drawn on them, so a huge canvas costs memory in
+ * proportion to the area that was actually drawn on. Pixels are in buffer
+ * coordinates: canvas coordinates shifted so that (0, 0) is the top left
+ * corner of the drawable area.
+ *
+ * Everything drawn is also kept in the scene, so with a limit on resident
+ * tiles the least recently used tiles are simply dropped and drawn again
+ * from the scene when they are next needed. Each tile keeps a chain of
+ * halved copies for drawing it scaled down, rebuilt when the tile changes.
+ *
+ * Only used on the AWT thread.
+ */
+class TLJ2DTileBuffer {
+
+    private static final int TILE_SHIFT = 8;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    TLJ2DTileBuffer(TLJ2DScene scene, int width, int height, int maxResidentTiles) {
+        this.scene = scene;
+        this.width = width;
+        this.height = height;
+        this.columns = Math.max(1, (width + TILE_SIZE - 1) >> TILE_SHIFT);
+        this.rows = Math.max(1, (height + TILE_SIZE - 1) >> TILE_SHIFT);
+        this.maxResidentTiles = maxResidentTiles;
+        this.tiles = new Tile[columns * rows];
+        this.resident = new LinkedHashMap<Tile, Boolean>(16, 0.75f, true);
+    }
+
+    private final TLJ2DScene scene;
+    private final int width, height;
+    private final int columns, rows;
+    private final int maxResidentTiles;   // 0 for no limit
+
+    private final Tile[] tiles;           // null where nothing was drawn
+    private final Map<Tile, Boolean> resident; // in least recently used order
+    private int rasterizedItems;
+    private int generation = -1;
+
+    /* the scene's items drawn into the tiles so far */
+    int getRasterizedItems() {
+        synchronized (scene) {
+            checkGeneration();
+            return rasterizedItems;
+        }
+    }
+
+    int getResidentTileCount() {
+        return resident.size();
+    }
+
+    int getAllocatedTileCount() {
+        int count = 0;
+        for (Tile tile : tiles) {
+            if (tile != null) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /* draws the items committed to the scene since the last call, and
+     * returns their bounds in canvas coordinates, or null if there were none
+     */
+    Rectangle2D rasterizeCommitted() {
+        synchronized (scene) {
+            checkGeneration();
+
+            Rectangle2D changed = null;
+            for (int id = rasterizedItems; id < scene.size(); ++id) {
+                Rectangle2D bounds = scene.getBounds(id);
+                for (Tile tile : getTiles(bounds, true)) {
+                    Graphics2D g = tile.createGraphics();
+                    scene.draw(g, id);
+                    g.dispose();
+                    tile.changed();
+                }
+                changed = changed == null? bounds : changed.createUnion(bounds);
+            }
+            rasterizedItems = scene.size();
+            trim();
+            return changed;
+        }
+    }
+
+    /* draws the tiles covering area (in buffer coordinates) at the given
+     * scale, using the tiles' scaled-down copies below a scale of 1
+     */
+    void draw(Graphics2D g, Rectangle area, float scale) {
+        int level = 0;
+        while (level < TILE_SHIFT && scale * (2 << level) <= 1) {
+            ++level;
+        }
+
+        /* restoring tiles draws from the scene, which may be cleared from
+         * any thread, so the items must stay those of this generation
+         */
+        Iterable<Tile> visible;
+        synchronized (scene) {
+            checkGeneration();
+            visible = getTiles(new Rectangle2D.Float(area.x - width / 2, area.y - height / 2,
+                    area.width, area.height), false);
+        }
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.scale(scale, scale);
+        for (Tile tile : visible) {
+            BufferedImage image = tile.getLevel(level);
+            g2.drawImage(image, tile.x, tile.y, TILE_SIZE, TILE_SIZE, null);
+        }
+        g2.dispose();
+        trim();
+    }
+
+    void clear() {
+        for (int i = 0; i < tiles.length; ++i) {
+            tiles[i] = null;
+        }
+        resident.clear();
+        rasterizedItems = 0;
+    }
+
+    /* drops everything once the scene has been cleared */
+    private void checkGeneration() {
+        if (scene.getGeneration() != generation) {
+            clear();
+            generation = scene.getGeneration();
+        }
+    }
+
+    /* the tiles overlapping bounds (in canvas coordinates), resident and
+     * optionally allocated
+     */
+    private Iterable<Tile> getTiles(Rectangle2D bounds, boolean allocate) {
+        int minX = (int) Math.floor(bounds.getMinX()) + width / 2;
+        int minY = (int) Math.floor(bounds.getMinY()) + height / 2;
+        int maxX = (int) Math.ceil(bounds.getMaxX()) + width / 2;
+        int maxY = (int) Math.ceil(bounds.getMaxY()) + height / 2;
+
+        int firstColumn = Math.max(0, minX >> TILE_SHIFT), lastColumn = Math.min(columns - 1, maxX >> TILE_SHIFT);
+        int firstRow = Math.max(0, minY >> TILE_SHIFT), lastRow = Math.min(rows - 1, maxY >> TILE_SHIFT);
+
+        List<Tile> result = Lists.newArrayList();
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                Tile tile = tiles[row * columns + column];
+                if (tile == null) {
+                    if (!allocate) {
+                        continue;
+                    }
+                    tile = new Tile(column << TILE_SHIFT, row << TILE_SHIFT);
+                    tiles[row * columns + column] = tile;
+                }
+                makeResident(tile);
+                result.add(tile);
+            }
+        }
+        return result;
+    }
+
+    private void makeResident(Tile tile) {
+        if (resident.get(tile) == null) {
+            tile.restore();
+            resident.put(tile, Boolean.TRUE);
+        }
+    }
+
+    /* evicts the least recently used tiles over the limit; only done once
+     * the tiles in use have been drawn, so a single large item may briefly
+     * need more
+     */
+    private void trim() {
+        if (maxResidentTiles <= 0) {
+            return;
+        }
+        Iterator<Tile> eldest = resident.keySet().iterator();
+        while (resident.size() > maxResidentTiles) {
+            eldest.next().evict();
+            eldest.remove();
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            /* no screen to be compatible with, e.g. when rendering offscreen */
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    private class Tile {
+
+        Tile(int x, int y) {
+            this.x = x;
+            this.y = y;
+            this.levels = new BufferedImage[TILE_SHIFT + 1];
+        }
+
+        final int x, y;                 // in buffer coordinates
+        private final BufferedImage[] levels;
+        private int levelsValid;        // levels [1, levelsValid] are up to date
+
+        /* draws in canvas coordinates */
+        Graphics2D createGraphics() {
+            Graphics2D g = levels[0].createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.translate(width / 2 - x, height / 2 - y);
+            g.clipRect(x - width / 2, y - height / 2, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+            return g;
+        }
+
+        void changed() {
+            levelsValid = 0;
+        }
+
+        BufferedImage getLevel(int level) {
+            while (levelsValid < level) {
+                int next = levelsValid + 1;
+                int size = TILE_SIZE >> next;
+                if (levels[next] == null) {
+                    levels[next] = createImage(size, size);
+                }
+                Graphics2D g = levels[next].createGraphics();
+                g.setComposite(AlphaComposite.Src);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(levels[next - 1], 0, 0, size, size, null);
+                g.dispose();
+                levelsValid = next;
+            }
+            return levels[level];
+        }
+
+        /* draws the tile again from the items rasterized so far; called
+         * under the scene's lock
+         */
+        void restore() {
+            levels[0] = createImage(TILE_SIZE, TILE_SIZE);
+            levelsValid = 0;
+            if (rasterizedItems == 0) {
+                return;
+            }
+
+            Graphics2D g = createGraphics();
+            for (int id : scene.query(new Rectangle2D.Float(x - width / 2, y - height / 2, TILE_SIZE, TILE_SIZE))) {
+                if (id < rasterizedItems) {
+                    scene.draw(g, id);
+                }
+            }
+            g.dispose();
+        }
+
+        void evict() {
+            for (int i = 0; i < levels.length; ++i) {
+                levels[i] = null;
+            }
+            levelsValid = 0;
+        }
+    }
+}
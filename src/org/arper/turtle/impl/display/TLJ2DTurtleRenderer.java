@@ -6,192 +6,179 @@ import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.List;
 
-import org.arper.turtle.TLPathType;
-import org.arper.turtle.TLTurtle;
 import org.arper.turtle.impl.TLDefaultTurtleAnimation;
 import org.arper.turtle.impl.TLAwtUtilities;
 import org.arper.turtle.impl.TLRenderer;
-import org.arper.turtle.impl.TLSingletonContext;
-import org.arper.turtle.impl.TLTurtleState;
+import org.arper.turtle.impl.TLTurtleSnapshot;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 
 public class TLJ2DTurtleRenderer implements TLRenderer {
     private static final AlphaComposite STATUS_COMPOSITE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f);
-    private static final int MAX_SAMPLED_POINTS = 30;
+    private static final float TINT_INTENSITY = 0.4f;
 
-    public TLJ2DTurtleRenderer(TLTurtle owner) {
-        this.owner = owner;
+    public TLJ2DTurtleRenderer(TLJ2DCanvas canvas) {
+        this.canvas = canvas;
         turtleAnimation = new TLDefaultTurtleAnimation();
-        sampledPathPoints = Lists.newArrayList();
+        path = new TLJ2DPathSegmentStore(canvas.getScene());
     }
 
-    private final TLTurtle owner;
-    private TLTurtleState renderedState;
-    private TLTurtleState newState;
-    private List<Point2D.Float> sampledPathPoints;
+    private final TLJ2DCanvas canvas;
+    private volatile TLTurtleSnapshot publishedState;
+    private volatile TLTurtleSnapshot renderedState; // read when marking dirty
+    private TLTurtleSnapshot previousState; // as of the last preRender
+    private TLTurtleSnapshot newState;
+    private final TLJ2DPathSegmentStore path;
 
     private TLJ2DStatusBubble statusBubble;
+    private volatile Rectangle statusBubbleBounds; // read when marking dirty
     private TLAnimation turtleAnimation;
 
     private Composite turtleComposite;
-    private Stroke stroke;
+    private BasicStroke stroke;
 
     private int getMaxDimension() {
         return Math.max(turtleAnimation.getBoundingWidth(), turtleAnimation.getBoundingHeight());
     }
 
-    private void refreshRenderState(Graphics2D g) {
+    private void refreshRenderState() {
         Preconditions.checkNotNull(newState, "Attempt to render before state has been set.");
 
-        boolean noState = (renderedState == null);
+        boolean noState = (previousState == null);
 
         /* turtleComposite */
-        if (noState || !Objects.equal(newState.color, renderedState.color)) {
-            turtleComposite = new TLJ2DUtilities.MultiplyColorComposite(newState.color, 0.4f);
+        if (noState || !Objects.equal(newState.getColor(), previousState.getColor())) {
+            turtleComposite = new TLJ2DUtilities.MultiplyColorComposite(newState.getColor(), TINT_INTENSITY);
         }
 
         /* statusBubble */
-        if (noState || !Objects.equal(newState.status, renderedState.status)) {
-            if (newState.status == null) {
+        if (noState || !Objects.equal(newState.getStatus(), previousState.getStatus())) {
+            if (newState.getStatus() == null) {
                 statusBubble = null;
+                statusBubbleBounds = null;
             } else {
-                float start = (float) turtleAnimation.getSize(owner) * .3f;
+                float start = (float) turtleAnimation.getSize(newState.getThickness()) * .3f;
                 float len = (float) 15;
-                statusBubble = new TLJ2DStatusBubble(start, -start, len, newState.status, 8);
+                statusBubble = new TLJ2DStatusBubble(start, -start, len, newState.getStatus(), 8);
+                statusBubbleBounds = statusBubble.getShape().getBounds();
             }
         }
 
         /* stroke */
-        boolean strokeChange = noState || newState.pathType != renderedState.pathType
-                || newState.thickness != renderedState.thickness;
-
-        if (strokeChange) {
-            int cap, join;
-            if (newState.pathType == TLPathType.Sharp) {
-                cap = BasicStroke.CAP_BUTT;
-                join = BasicStroke.JOIN_BEVEL;
-            } else {
-                cap = BasicStroke.CAP_ROUND;
-                join = BasicStroke.JOIN_ROUND;
-            }
-            stroke = new BasicStroke(newState.thickness, cap, join);
-        }
+        boolean strokeChange = noState || newState.getPathType() != previousState.getPathType()
+                || newState.getThickness() != previousState.getThickness();
+        boolean colorChange = noState || !Objects.equal(newState.getColor(), previousState.getColor());
 
         /* segment committing */
-        if (renderedState != null &&
-                !sampledPathPoints.isEmpty() && (
-                strokeChange ||
-                newState.color != renderedState.color ||
-                newState.isPenDown != renderedState.isPenDown)) {
-            sampledPathPoints.add(renderedState.location);
-            g.setColor(renderedState.color);
-            Stroke oldStroke = g.getStroke();
-            g.setStroke(stroke);
-            TLJ2DUtilities.drawPath(g, sampledPathPoints);
-            g.setStroke(oldStroke);
-            sampledPathPoints.clear();
+        if (path.isActive() && (strokeChange || colorChange || !newState.isPenDown())) {
+            path.finish();
         }
 
-        /* path point sampling */
-        if (newState.isPenDown && shouldSample()) {
-            sampledPathPoints.add(new Point2D.Float(newState.location.x,
-                    newState.location.y));
-            resampleIfNecessary();
+        if (strokeChange) {
+            stroke = TLJ2DScene.createStroke(newState.getThickness(), newState.getPathType());
         }
-    }
-
-    private boolean shouldSample() {
-        return sampledPathPoints.isEmpty() ||
-                sampledPathPoints.get(sampledPathPoints.size() - 1).distanceSq(newState.location) >= 0.5f;
-    }
 
-    private void resampleIfNecessary() {
-        if (sampledPathPoints.size() >= MAX_SAMPLED_POINTS * 2 + 1) {
-            sampledPathPoints = TLJ2DUtilities.sampleListUniformly(sampledPathPoints, MAX_SAMPLED_POINTS);
+        /* path extension */
+        if (newState.isPenDown()) {
+            if (!path.isActive()) {
+                /* a restyled path carries on from where the old one stopped */
+                boolean continued = !noState && previousState.isPenDown();
+                TLTurtleSnapshot start = continued? previousState : newState;
+                path.begin(start.getX(), start.getY(), newState.getColor(), stroke);
+            }
+            path.lineTo(newState.getX(), newState.getY());
         }
     }
 
     @Override
-    public void markDirty() {
-        TLAwtUtilities.assertOffAwtThread();
-
-        if (renderedState != null) {
-            markDirtyAtLocation(renderedState.location);
+    public void publish(TLTurtleSnapshot snapshot) {
+        publishedState = snapshot;
+
+        TLTurtleSnapshot rendered = renderedState;
+        if (rendered == null) {
+            rendered = snapshot;
+        } else {
+            markStatusBubbleDirty(rendered.getX(), rendered.getY());
         }
-
-        markDirtyAtLocation(owner.getLocation());
+        markStatusBubbleDirty(snapshot.getX(), snapshot.getY());
+
+        /* everything from the last drawn location to the new one, so that
+         * the live path between them is repainted too
+         */
+        double maxSize = Math.max(turtleAnimation.getSize(snapshot.getThickness()) / Math.sqrt(2),
+                turtleAnimation.getCursorSize(snapshot.getThickness()) / 2);
+        maxSize = Math.max(maxSize, snapshot.getThickness() / 2);
+        int size = (int) Math.ceil(maxSize);
+        int minX = (int) Math.floor(Math.min(rendered.getX(), snapshot.getX()));
+        int minY = (int) Math.floor(Math.min(rendered.getY(), snapshot.getY()));
+        int maxX = (int) Math.ceil(Math.max(rendered.getX(), snapshot.getX()));
+        int maxY = (int) Math.ceil(Math.max(rendered.getY(), snapshot.getY()));
+        canvas.markDirty(minX - size, minY - size, maxX - minX + 2 * size, maxY - minY + 2 * size);
     }
 
-    private void markDirtyAtLocation(Point2D loc) {
-        TLJ2DCanvas canvas = (TLJ2DCanvas) TLSingletonContext.get().getWindow().getCanvas();
-
-        if (statusBubble != null) {
-            Rectangle r = statusBubble.getShape().getBounds();
-            r.translate((int)Math.round(loc.getX()), (int)Math.round(loc.getY()));
-            canvas.markDirty(r);
+    private void markStatusBubbleDirty(float x, float y) {
+        Rectangle bubbleBounds = statusBubbleBounds;
+        if (bubbleBounds != null) {
+            canvas.markDirty(bubbleBounds.x + Math.round(x), bubbleBounds.y + Math.round(y),
+                    bubbleBounds.width, bubbleBounds.height);
         }
-
-        double maxSize = Math.max(turtleAnimation.getSize(owner) / Math.sqrt(2), turtleAnimation.getCursorSize(owner) / 2);
-        canvas.markDirty(loc, (int)Math.ceil(maxSize));
     }
 
     @Override
-    public void preRender(Graphics2D g) {
+    public void preRender() {
         TLAwtUtilities.assertOnAwtThread();
 
+        newState = publishedState;
         if (newState == null) {
-            newState = new TLTurtleState();
+            return;
         }
 
-        newState.set(TLSingletonContext.get().getSimulator().getTurtleState(owner));
+        refreshRenderState();
+        previousState = newState;
+    }
 
-        refreshRenderState(g);
+    /* the path this turtle is drawing that is not in the scene yet */
+    void appendLiveSvg(StringBuilder svg) {
+        TLAwtUtilities.assertOnAwtThread();
+        path.appendLiveSvg(svg);
     }
 
     @Override
     public void render(Graphics2D g) {
         TLAwtUtilities.assertOnAwtThread();
 
+        if (newState == null) {
+            /* created since the last frame; drawn from the next one on */
+            return;
+        }
+
         drawPaint(g);
         drawStatusBubble(g);
         drawTurtle(g);
 
-        if (renderedState == null) {
-            renderedState = new TLTurtleState();
-        }
-        renderedState.set(newState);
+        renderedState = newState;
     }
 
     int max = 0;
 
     private void drawPaint(Graphics2D g) {
-        if (!newState.isPenDown) {
+        if (!newState.isPenDown()) {
             return;
         }
 
-        double cSize = turtleAnimation.getCursorSize(owner);
-        g.setColor(newState.color);
-        g.fill(new Ellipse2D.Double(newState.location.x - cSize / 2,
-                newState.location.y - cSize / 2,
+        double cSize = turtleAnimation.getCursorSize(newState.getThickness());
+        g.setColor(newState.getColor());
+        g.fill(new Ellipse2D.Double(newState.getX() - cSize / 2,
+                newState.getY() - cSize / 2,
                 cSize,
                 cSize));
 
-        if (!sampledPathPoints.isEmpty()) {
-            Stroke oldStroke = g.getStroke();
-            g.setStroke(stroke);
-            TLJ2DUtilities.drawPath(g, sampledPathPoints);
-            g.setStroke(oldStroke);
-        }
+        path.drawLive(g);
     }
 
     private void drawStatusBubble(Graphics2D g) {
@@ -200,11 +187,11 @@ public class TLJ2DTurtleRenderer implements TLRenderer {
         }
 
         AffineTransform at = g.getTransform();
-        g.translate(newState.location.x, newState.location.y);
+        g.translate(newState.getX(), newState.getY());
         g.setColor(Color.white);
         g.setComposite(STATUS_COMPOSITE);
         g.fill(statusBubble.getShape());
-        g.setColor(owner.getColor().darker().darker());
+        g.setColor(newState.getColor().darker().darker());
         g.draw(statusBubble.getShape());
         statusBubble.drawText(g);
         g.setTransform(at);
@@ -212,10 +199,10 @@ public class TLJ2DTurtleRenderer implements TLRenderer {
 
     private void drawTurtle(Graphics2D g) {
         AffineTransform at = g.getTransform();
-        double size = turtleAnimation.getSize(owner);
+        double size = turtleAnimation.getSize(newState.getThickness());
         double scale = size / getMaxDimension();
 
-        g.translate(newState.location.x, newState.location.y);
+        g.translate(newState.getX(), newState.getY());
         //          double elapsedSeconds = owner.helperGetAnimationHelper().getElapsedSeconds();
         //          double elapsedDistance = owner.helperGetAnimationHelper().getTotalMillipixels() / 100000.0;
         double elapsedSeconds = 0;
@@ -231,18 +218,21 @@ public class TLJ2DTurtleRenderer implements TLRenderer {
 
             double tX = turtleAnimation.getBoundingWidth() * turtleAnimation.getCenterX(i);
             double tY = turtleAnimation.getBoundingHeight() * turtleAnimation.getCenterY(i);
-            double rotateAmount = newState.heading + turtleAnimation.getPieceRotation(i, elapsed);
+            double rotateAmount = newState.getHeading() + turtleAnimation.getPieceRotation(i, elapsed);
             g.rotate(rotateAmount);
 
-            BufferedImage pretty = TLJ2DUtilities.getScaledImage((int) Math.ceil(size), images[i]);
+            BufferedImage pretty = TLJ2DUtilities.getTintedImage((int) Math.ceil(size), images[i],
+                    newState.getColor(), TINT_INTENSITY);
             if (pretty != null) {
                 g.translate(-turtleAnimation.getCenterX(i) * pretty.getWidth(),
                         -turtleAnimation.getCenterY(i) * pretty.getHeight());
+                g.drawImage(pretty, 0, 0, null);
             } else {
+                /* not scaled yet, so scale and tint the full-size piece on the fly */
                 g.scale(scale, scale);
                 g.translate(-tX, -tY);
+                TLJ2DUtilities.drawImage(g, images[i], turtleComposite);
             }
-            TLJ2DUtilities.drawImage(g, pretty, turtleComposite);
 
             g.setTransform(at2);
         }
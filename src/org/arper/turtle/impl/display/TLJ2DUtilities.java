@@ -19,20 +19,25 @@ import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingConstants;
 
+import org.arper.turtle.impl.TLLogging;
 import org.imgscalr.Scalr;
 import org.imgscalr.Scalr.Method;
 
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 public class TLJ2DUtilities {
 
@@ -96,8 +101,17 @@ public class TLJ2DUtilities {
             this.alpha = alpha;
 
             overlayAddition = new float[]{ c.getRed() * intensity, c.getGreen() * intensity, c.getBlue() * intensity };
+
+            channelTables = new int[3][];
+            for (int k = 0; k < 3; ++k) {
+                channelTables[k] = createChannelTable(1 - intensity, overlayAddition[k]);
+            }
+            alphaTable = createAlphaTable(alpha);
         }
 
+        private final int[][] channelTables;
+        private final int[] alphaTable;
+
         @Override
         public CompositeContext createContext(ColorModel srcColorModel,
                                               ColorModel dstColorModel, RenderingHints hints) {
@@ -118,6 +132,9 @@ public class TLJ2DUtilities {
 
             @Override
             public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+                if (composeTinted(src, dstIn, dstOut, channelTables, alphaTable)) {
+                    return;
+                }
 
                 int w = Math.min(src.getWidth(), dstIn.getWidth());
                 int h = Math.min(src.getHeight(), dstIn.getHeight());
@@ -176,14 +193,45 @@ public class TLJ2DUtilities {
                     (1 - intensity) + intensity * color.getGreen() / 255.0f,
                     (1 - intensity) + intensity * color.getBlue() / 255.0f,
                     (1 - intensity) + intensity * color.getAlpha() / 255.0f};
+
+            channelTables = new int[3][];
+            for (int k = 0; k < 3; ++k) {
+                channelTables[k] = createChannelTable(this.color[k], 0);
+            }
+            alphaTable = createAlphaTable(this.color[3]);
         }
 
+        private final int[][] channelTables;
+        private final int[] alphaTable;
+
         @Override
         public CompositeContext createContext(ColorModel srcColorModel,
                                               ColorModel dstColorModel, RenderingHints hints) {
             return new MultiplyColorCompositeContext(srcColorModel, dstColorModel);
         }
 
+        /* Returns a copy of the image with this composite's tint baked in.
+         * Drawn with plain SRC_OVER onto an opaque destination, it produces
+         * the same pixels as drawing the original image with this composite.
+         */
+        public BufferedImage createTintedImage(BufferedImage image) {
+            int w = image.getWidth(), h = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+
+            for (int i = 0; i < pixels.length; i++) {
+                int p = pixels[i];
+                int a = (alphaTable[p >>> 24] * 255 + ALPHA_ONE / 2) >> ALPHA_BITS;
+                int r = (channelTables[0][(p >> 16) & 0xff] + 128) >> 8;
+                int g = (channelTables[1][(p >> 8) & 0xff] + 128) >> 8;
+                int b = (channelTables[2][p & 0xff] + 128) >> 8;
+                pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+
+            BufferedImage tinted = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            tinted.setRGB(0, 0, w, h, pixels, 0, w);
+            return tinted;
+        }
+
         private class MultiplyColorCompositeContext implements CompositeContext {
 
             @SuppressWarnings("unused")
@@ -198,6 +246,9 @@ public class TLJ2DUtilities {
 
             @Override
             public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+                if (composeTinted(src, dstIn, dstOut, channelTables, alphaTable)) {
+                    return;
+                }
 
                 int w = Math.min(src.getWidth(), dstIn.getWidth());
                 int h = Math.min(src.getHeight(), dstIn.getHeight());
@@ -246,30 +297,281 @@ public class TLJ2DUtilities {
         }
     }
 
+    private static final int ALPHA_BITS = 12;
+    private static final int ALPHA_ONE = 1 << ALPHA_BITS;
+    private static final int BLEND_SHIFT = ALPHA_BITS + 8;
+    private static final int BLEND_ROUNDING = 1 << (BLEND_SHIFT - 1);
 
-    private static final LoadingCache<Map.Entry<Integer, BufferedImage>, BufferedImage> imageCache
-        = CacheBuilder.newBuilder().concurrencyLevel(4).build(
-                new CacheLoader<Map.Entry<Integer, BufferedImage>, BufferedImage>() {
-                    @Override
-                    public BufferedImage load(Entry<Integer, BufferedImage> e)
-                            throws Exception {
-                        return Scalr.apply(Scalr.resize(e.getValue(), Method.ULTRA_QUALITY, e.getKey()), Scalr.OP_ANTIALIAS);
-                    }
-                });
+    private static int[] createChannelTable(float scale, float addition) {
+        int[] table = new int[256];
+        for (int s = 0; s < 256; ++s) {
+            int value = Math.round((s * scale + addition) * 256);
+            table[s] = Math.max(0, Math.min(255 * 256, value));
+        }
+        return table;
+    }
 
-    public static BufferedImage getScaledImage(int size, BufferedImage im) {
-        Map.Entry<Integer, BufferedImage> key = Maps.immutableEntry(size, im);
+    private static int[] createAlphaTable(float alpha) {
+        int[] table = new int[256];
+        for (int s = 0; s < 256; ++s) {
+            int value = Math.round(alpha * s / 255.0f * ALPHA_ONE);
+            table[s] = Math.max(0, Math.min(ALPHA_ONE, value));
+        }
+        return table;
+    }
 
-        /* Only request loading of the given image. If it isn't ready, return null
-         * and let caller deal with scaling manually, or try again.
-         */
-        BufferedImage image = imageCache.getIfPresent(key);
+    /* Fixed-point fast path shared by the tinting composites, for rasters that
+     * TLJ2DPackedRaster can address directly. Both composites blend
+     *
+     *     out = tint(src) * srcAlpha + dst * (1 - srcAlpha)
+     *
+     * per color channel, keeping the destination alpha. Here tint(src) comes
+     * from channelTables (scaled by 2^8) and srcAlpha from alphaTable (scaled
+     * by 2^12), both indexed by the source sample. Returns false if the
+     * rasters are not supported, in which case nothing has been written.
+     */
+    private static boolean composeTinted(Raster src, Raster dstIn, WritableRaster dstOut,
+                                         int[][] channelTables, int[] alphaTable) {
+        TLJ2DPackedRaster s = TLJ2DPackedRaster.wrap(src);
+        TLJ2DPackedRaster d = TLJ2DPackedRaster.wrap(dstIn);
+        TLJ2DPackedRaster o = dstOut == dstIn? d : TLJ2DPackedRaster.wrap(dstOut);
+        if (s == null || d == null || o == null) {
+            return false;
+        }
+
+        int[] redTable = channelTables[0], greenTable = channelTables[1], blueTable = channelTables[2];
+        int w = Math.min(src.getWidth(), dstIn.getWidth());
+        int h = Math.min(src.getHeight(), dstIn.getHeight());
+
+        for (int j = 0; j < h; j++) {
+            int sIndex = s.indexOf(src.getMinX(), src.getMinY() + j);
+            int dIndex = d.indexOf(dstIn.getMinX(), dstIn.getMinY() + j);
+            int oIndex = o.indexOf(dstOut.getMinX(), dstOut.getMinY() + j);
+
+            for (int i = 0; i < w; i++) {
+                int sP = s.get(sIndex);
+                int dP = d.get(dIndex);
+
+                int srcSampleAlpha = sP >>> 24;
+                if (srcSampleAlpha != 0) {
+                    int a = alphaTable[srcSampleAlpha];
+                    int inverse = (ALPHA_ONE - a) << 8;
+                    int r = (redTable[(sP >> 16) & 0xff] * a + ((dP >> 16) & 0xff) * inverse + BLEND_ROUNDING) >> BLEND_SHIFT;
+                    int g = (greenTable[(sP >> 8) & 0xff] * a + ((dP >> 8) & 0xff) * inverse + BLEND_ROUNDING) >> BLEND_SHIFT;
+                    int b = (blueTable[sP & 0xff] * a + (dP & 0xff) * inverse + BLEND_ROUNDING) >> BLEND_SHIFT;
+                    o.set(oIndex, (dP & 0xff000000) | (r << 16) | (g << 8) | b);
+                } else {
+                    /* see the generic paths for why the Mac writes zeros here */
+                    o.set(oIndex, isMacOS? 0 : dP);
+                }
+
+                sIndex += s.pixelStride;
+                dIndex += d.pixelStride;
+                oIndex += o.pixelStride;
+            }
+        }
+        return true;
+    }
+
+    /* Scaled images are produced on background threads and kept in a cache
+     * bounded by the memory the images take up. Requested sizes are quantized
+     * (see quantizeSize) so that sweeping through sizes or zoom levels reuses
+     * a limited set of images.
+     */
+    private static final long MAX_SCALED_IMAGE_BYTES = 32L << 20;
+
+    private static final Weigher<Object, BufferedImage> IMAGE_BYTES = new Weigher<Object, BufferedImage>() {
+        @Override
+        public int weigh(Object key, BufferedImage image) {
+            return image.getWidth() * image.getHeight() * 4;
+        }
+    };
+
+    private static final Cache<ScaledImageKey, BufferedImage> scaledImageCache
+        = CacheBuilder.newBuilder()
+            .concurrencyLevel(4)
+            .maximumWeight(MAX_SCALED_IMAGE_BYTES)
+            .<ScaledImageKey, BufferedImage>weigher(IMAGE_BYTES)
+            .build();
+
+    private static final ConcurrentMap<ScaledImageKey, CompletableFuture<BufferedImage>> pendingScaledImages
+        = new ConcurrentHashMap<ScaledImageKey, CompletableFuture<BufferedImage>>();
+
+    private static final ExecutorService imageScaler = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TLImageScalerThread-" + count.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    /* Sizes up to 16 are kept exact; larger ones are rounded to a step of
+     * 1/8 of their highest power of two, i.e. to within 1/16 of the request.
+     */
+    public static int quantizeSize(int size) {
+        if (size <= 16) {
+            return size;
+        }
+        int step = Integer.highestOneBit(size) / 8;
+        return (size + step / 2) / step * step;
+    }
+
+    /* Returns the image scaled to (about) the given size, or null if it has
+     * not been scaled yet. In that case scaling is started in the background,
+     * and the caller should deal with scaling manually or try again later.
+     */
+    public static BufferedImage getScaledImage(int size, BufferedImage im) {
+        ScaledImageKey key = new ScaledImageKey(im, quantizeSize(size));
+        BufferedImage image = scaledImageCache.getIfPresent(key);
         if (image == null) {
-            imageCache.refresh(key);
+            loadScaledImage(key);
         }
         return image;
     }
 
+    /* Starts scaling the given images to each of the given sizes, so that they
+     * are ready by the time they are first drawn. The returned future
+     * completes once all of them are cached.
+     */
+    public static CompletableFuture<Void> prewarmScaledImages(Iterable<BufferedImage> images, int... sizes) {
+        List<CompletableFuture<BufferedImage>> loads = Lists.newArrayList();
+        for (BufferedImage im : images) {
+            if (im == null) {
+                continue;
+            }
+            for (int size : sizes) {
+                loads.add(loadScaledImage(new ScaledImageKey(im, quantizeSize(size))));
+            }
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]));
+    }
+
+    private static CompletableFuture<BufferedImage> loadScaledImage(final ScaledImageKey key) {
+        final CompletableFuture<BufferedImage> load = new CompletableFuture<BufferedImage>();
+        CompletableFuture<BufferedImage> pending = pendingScaledImages.putIfAbsent(key, load);
+        if (pending != null) {
+            return pending;
+        }
+
+        /* it may have finished loading since the caller last looked */
+        BufferedImage cached = scaledImageCache.getIfPresent(key);
+        if (cached != null) {
+            pendingScaledImages.remove(key, load);
+            load.complete(cached);
+            return load;
+        }
+
+        imageScaler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedImage scaled = Scalr.apply(
+                            Scalr.resize(key.image, Method.ULTRA_QUALITY, key.size), Scalr.OP_ANTIALIAS);
+                    scaledImageCache.put(key, scaled);
+                    load.complete(scaled);
+                } catch (RuntimeException e) {
+                    TLLogging.error("Unable to scale image to size " + key.size + ".", e);
+                    load.completeExceptionally(e);
+                } finally {
+                    pendingScaledImages.remove(key, load);
+                }
+            }
+        });
+        return load;
+    }
+
+    private static final class ScaledImageKey {
+
+        private ScaledImageKey(BufferedImage image, int size) {
+            this.image = image;
+            this.size = size;
+        }
+
+        private final BufferedImage image;
+        private final int size;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ScaledImageKey)) {
+                return false;
+            }
+            ScaledImageKey other = (ScaledImageKey) o;
+            return image == other.image && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(image) * 31 + size;
+        }
+    }
+
+    /* Scaled sprite pieces with a MultiplyColorComposite tint already applied,
+     * so that steady-state turtle drawing is a plain (accelerated) blit.
+     * Bounded by memory like the scaled images, as large turtles or zoom
+     * levels make single entries big.
+     */
+    private static final long MAX_TINTED_IMAGE_BYTES = 32L << 20;
+
+    private static final Cache<TintedImageKey, BufferedImage> tintedImageCache
+        = CacheBuilder.newBuilder()
+            .concurrencyLevel(4)
+            .maximumWeight(MAX_TINTED_IMAGE_BYTES)
+            .<TintedImageKey, BufferedImage>weigher(IMAGE_BYTES)
+            .build();
+
+    public static BufferedImage getTintedImage(int size, BufferedImage im, Color color, float intensity) {
+        TintedImageKey key = new TintedImageKey(im, quantizeSize(size), color.getRGB(), intensity);
+        BufferedImage tinted = tintedImageCache.getIfPresent(key);
+        if (tinted == null) {
+            BufferedImage scaled = getScaledImage(size, im);
+            if (scaled == null) {
+                return null;
+            }
+            tinted = new MultiplyColorComposite(color, intensity).createTintedImage(scaled);
+            tintedImageCache.put(key, tinted);
+        }
+        return tinted;
+    }
+
+    private static final class TintedImageKey {
+
+        private TintedImageKey(BufferedImage piece, int size, int argb, float intensity) {
+            this.piece = piece;
+            this.size = size;
+            this.argb = argb;
+            this.intensity = intensity;
+        }
+
+        private final BufferedImage piece;
+        private final int size;
+        private final int argb;
+        private final float intensity;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TintedImageKey)) {
+                return false;
+            }
+            TintedImageKey other = (TintedImageKey) o;
+            return piece == other.piece
+                    && size == other.size
+                    && argb == other.argb
+                    && intensity == other.intensity;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(piece);
+            hash = hash * 31 + size;
+            hash = hash * 31 + argb;
+            return hash * 31 + Float.floatToIntBits(intensity);
+        }
+    }
+
     public static void drawImage(Graphics2D g, BufferedImage image, Composite composite) {
         if (TLJ2DUtilities.isMacOS) {
             g.drawImage(image, 0, 0, null);
@@ -281,19 +583,6 @@ public class TLJ2DUtilities {
         }
     }
 
-    public static <T> List<T> sampleListUniformly(List<T> list, int count) {
-        if (count >= list.size()) {
-            return list;
-        }
-        List<T> results = Lists.newArrayListWithCapacity(count);
-
-        for (int i = 0; i < count; ++i) {
-            int sampleIndex = i * (list.size() - 1) / (count - 1);
-            results.add(list.get(sampleIndex));
-        }
-        return results;
-    }
-
     public static void drawPath(Graphics2D g, List<Point2D.Float> points) {
         Composite oldComposite = g.getComposite();
         g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
@@ -0,0 +1,115 @@
+package org.arper.turtle.impl.display;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/* The committed drawing as seen at the current zoom, kept at the resolution
+ * it is displayed at and covering only the visible part of the canvas.
+ *
+ * Zooming in draws the visible items of the scene again at the new scale, so
+ * strokes and text stay sharp and the cost follows the number of visible
+ * items rather than the canvas area. Zooming out instead scales down the
+ * visible tiles of the back buffer, each from the nearest of its halved
+ * copies. Once built, the view is only brought up to date by drawing the
+ * items committed since.
+ *
+ * Only used on the AWT thread.
+ */
+class TLJ2DZoomView {
+
+    TLJ2DZoomView(TLJ2DScene scene, int drawableWidth, int drawableHeight) {
+        this.scene = scene;
+        this.drawableWidth = drawableWidth;
+        this.drawableHeight = drawableHeight;
+    }
+
+    private final TLJ2DScene scene;
+    private final int drawableWidth, drawableHeight;
+
+    private BufferedImage buffer;
+    private Rectangle view;          // in component pixels
+    private float zoom;
+    private int generation = -1;
+    private int renderedItems;
+
+    /* the view of the visible rectangle, brought up to date */
+    BufferedImage update(TLJ2DTileBuffer backBuffer, float zoom, Rectangle visible) {
+        synchronized (scene) {
+            if (buffer == null || zoom != this.zoom || !visible.equals(view)
+                    || scene.getGeneration() != generation) {
+                rebuild(backBuffer, zoom, visible);
+            }
+            if (scene.size() > renderedItems) {
+                Graphics2D g = createGraphics();
+                for (int id = renderedItems; id < scene.size(); ++id) {
+                    if (scene.getBounds(id).intersects(getVisibleArea())) {
+                        scene.draw(g, id);
+                    }
+                }
+                g.dispose();
+                renderedItems = scene.size();
+            }
+        }
+        return buffer;
+    }
+
+    Rectangle getView() {
+        return view;
+    }
+
+    private void rebuild(TLJ2DTileBuffer backBuffer, float zoom, Rectangle visible) {
+        this.zoom = zoom;
+        this.view = new Rectangle(visible);
+        this.generation = scene.getGeneration();
+
+        int width = Math.max(1, visible.width), height = Math.max(1, visible.height);
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+            buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            Graphics2D clear = buffer.createGraphics();
+            clear.setComposite(AlphaComposite.Clear);
+            clear.fillRect(0, 0, width, height);
+            clear.dispose();
+        }
+
+        if (zoom > 1 || backBuffer == null) {
+            Graphics2D g = createGraphics();
+            scene.draw(g, getVisibleArea());
+            g.dispose();
+            renderedItems = scene.size();
+            return;
+        }
+
+        /* the tiles only hold what was rasterized into them; update() draws
+         * the rest from the scene
+         */
+        Graphics2D g = buffer.createGraphics();
+        g.translate(-visible.x, -visible.y);
+        backBuffer.draw(g, new Rectangle((int) Math.floor(visible.x / zoom), (int) Math.floor(visible.y / zoom),
+                (int) Math.ceil(visible.width / zoom) + 1, (int) Math.ceil(visible.height / zoom) + 1), zoom);
+        g.dispose();
+        renderedItems = backBuffer.getRasterizedItems();
+    }
+
+    /* draws in canvas coordinates, like the back buffer's graphics */
+    private Graphics2D createGraphics() {
+        Graphics2D g = buffer.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.translate(-view.x, -view.y);
+        g.scale(zoom, zoom);
+        g.translate(drawableWidth / 2, drawableHeight / 2);
+        g.clipRect(-drawableWidth / 2, -drawableHeight / 2, drawableWidth, drawableHeight);
+        return g;
+    }
+
+    /* the visible rectangle, in canvas coordinates */
+    private Rectangle2D getVisibleArea() {
+        return new Rectangle2D.Float(view.x / zoom - drawableWidth / 2, view.y / zoom - drawableHeight / 2,
+                view.width / zoom, view.height / zoom);
+    }
+}
@@ -7,9 +7,11 @@ import org.arper.turtle.TLTurtle;
 import org.arper.turtle.impl.TLRenderer;
 
 public interface TLCanvas {
-    TLRenderer getRenderer(TLTurtle turtle);
+    TLRenderer createRenderer(TLTurtle turtle);
+    void removeRenderer(TLRenderer renderer);
     void clear();
     void setBackground(Color color);
+    double getAchievedFramesPerSecond();
 
     public void drawString(String text, double x, double y);
     public void drawString(String text, double x, double y, 
@@ -15,6 +15,8 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -43,6 +45,7 @@ import javax.swing.event.ChangeListener;
 
 import org.arper.turtle.TLSimulationSettings;
 import org.arper.turtle.TLTurtle;
+import org.arper.turtle.config.TLApplicationConfig;
 import org.arper.turtle.impl.TLSingletonContext;
 import org.arper.turtle.impl.display.TLJ2DCanvas;
 
@@ -53,6 +56,7 @@ import org.arper.turtle.impl.display.TLJ2DCanvas;
 @SuppressWarnings("serial")
 public class TLWindow extends JFrame {
 	private TLJ2DCanvas canvas;
+	private final TLSimulationSettings settings;   // of the context the window is made for
 	private JToolBar controlPanel;
 	private JComponent pauseOverlay;
 	private JButton playButton;
@@ -87,9 +91,18 @@ public class TLWindow extends JFrame {
 	}
 
 	public TLWindow(int canvasWidth, int canvasHeight) {
+	    this(new TLJ2DCanvas(canvasWidth, canvasHeight));
+	}
+
+	public TLWindow(TLApplicationConfig config) {
+	    this(new TLJ2DCanvas(config));
+	}
+
+	private TLWindow(TLJ2DCanvas canvas) {
+	    settings = TLSingletonContext.get().getSimulator().getSettings();
 	    console = new TLConsole();
 	    layoutToolbar();
-	    layoutCanvas(canvasWidth, canvasHeight);
+	    layoutCanvas(canvas);
         refreshPlayPauseDisplay();
 	    try {
 	        setIconImage(ImageIO.read(ClassLoader.getSystemResource("icons/turtle.png")));
@@ -102,6 +115,19 @@ public class TLWindow extends JFrame {
 		this.addKeyListener(inputListener);
 		controlPanel.addKeyListener(inputListener);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+		/* closing exits, which never reports the window closed */
+		addWindowListener(new WindowAdapter() {
+		    @Override
+		    public void windowClosing(WindowEvent e) {
+		        canvas.shutdown();
+		    }
+
+		    @Override
+		    public void windowClosed(WindowEvent e) {
+		        canvas.shutdown();
+		    }
+		});
 	}
 
 	public TLWindow() {
@@ -129,7 +155,6 @@ public class TLWindow extends JFrame {
 	}
 
 	private void refreshPlayPauseDisplay() {
-        TLSimulationSettings settings = TLSingletonContext.get().getSimulator().getSettings();
         if (!settings.isPaused()) {
             pauseOverlay.setVisible(false);
 
@@ -168,7 +193,6 @@ public class TLWindow extends JFrame {
 	}
 
 	private void playAction() {
-	    TLSimulationSettings settings = TLSingletonContext.get().getSimulator().getSettings();
 	    synchronized (settings) {
 	        if (settings.isPaused()) {
 	            settings.unpause();
@@ -180,7 +204,6 @@ public class TLWindow extends JFrame {
 	}
 
 	private void speedAction() {
-        TLSimulationSettings settings = TLSingletonContext.get().getSimulator().getSettings();
         double val = speedSlider.getModel().getValue() * 1.0 / speedSlider.getModel().getMaximum();
         synchronized (settings) {
             settings.setAnimationSpeed((float) (Math.pow(36, val) / 6));
@@ -247,10 +270,10 @@ public class TLWindow extends JFrame {
 	    }
 	}
 
-    private void layoutCanvas(int width, int height) {
+    private void layoutCanvas(TLJ2DCanvas canvas) {
 	    setLayout(new BorderLayout());
 
-        canvas = new TLJ2DCanvas(width, height);
+        this.canvas = canvas;
         canvas.setBackground(Color.WHITE);
 
 